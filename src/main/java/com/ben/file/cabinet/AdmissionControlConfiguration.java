@@ -0,0 +1,27 @@
+package com.ben.file.cabinet;
+
+import com.ben.file.cabinet.web.AdmissionControlInterceptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+public class AdmissionControlConfiguration {
+
+    @Autowired
+    private AdmissionControlInterceptor admissionControlInterceptor;
+
+    @Bean
+    public WebMvcConfigurer admissionControlConfigurer() {
+        return new WebMvcConfigurer() {
+            @Override
+            public void addInterceptors(InterceptorRegistry registry) {
+                // Runs after CORS handling, so rejections still carry the CORS headers
+                registry.addInterceptor(admissionControlInterceptor)
+                        .addPathPatterns("/api/**");
+            }
+        };
+    }
+}
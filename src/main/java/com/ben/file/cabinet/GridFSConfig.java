@@ -19,10 +19,25 @@ public class GridFSConfig {
     @Value("${file.cabinet.gridfs.bucket-name}")
     private String bucketName;
 
+    @Value("${file.cabinet.gridfs.chunk-size-bytes:261120}")
+    private int chunkSize;
+
+    @Value("${file.cabinet.gridfs.large-file-threshold-bytes:4194304}")
+    private long largeFileThreshold;
+
+    @Value("${file.cabinet.gridfs.large-chunk-size-bytes:1048576}")
+    private int largeChunkSize;
+
+    @Bean
+    public GridFsChunkSizePolicy gridFsChunkSizePolicy() {
+        return new GridFsChunkSizePolicy(chunkSize, largeFileThreshold, largeChunkSize);
+    }
+
     @Bean
-    public GridFSBucket gridFSBucket(MongoClient mongoClient) {
+    public GridFSBucket gridFSBucket(MongoClient mongoClient, GridFsChunkSizePolicy chunkSizePolicy) {
         MongoDatabase database = mongoClient.getDatabase(databaseName);
-        return GridFSBuckets.create(database, bucketName);
+        return GridFSBuckets.create(database, bucketName)
+                .withChunkSizeBytes(chunkSizePolicy.getDefaultChunkSize());
     }
 
     @Bean
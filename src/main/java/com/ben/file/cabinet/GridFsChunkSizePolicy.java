@@ -0,0 +1,41 @@
+package com.ben.file.cabinet;
+
+import com.mongodb.client.gridfs.model.GridFSUploadOptions;
+import org.bson.Document;
+
+// Picks the GridFS chunk size by file size: large files get bigger chunks so a download
+// needs fewer chunk documents, small files keep the default so they waste no space.
+public class GridFsChunkSizePolicy {
+
+    // Chunks are documents, which are capped at 16MB including the BSON overhead
+    private static final int MAX_CHUNK_SIZE = 15 * 1024 * 1024;
+
+    private final int defaultChunkSize;
+    private final long largeFileThreshold;
+    private final int largeChunkSize;
+
+    public GridFsChunkSizePolicy(int defaultChunkSize, long largeFileThreshold, int largeChunkSize) {
+        if (defaultChunkSize <= 0 || defaultChunkSize > MAX_CHUNK_SIZE || largeChunkSize <= 0 || largeChunkSize > MAX_CHUNK_SIZE) {
+            throw new IllegalArgumentException("GridFS chunk sizes must be between 1 byte and " + MAX_CHUNK_SIZE + " bytes");
+        }
+        this.defaultChunkSize = defaultChunkSize;
+        this.largeFileThreshold = largeFileThreshold;
+        this.largeChunkSize = largeChunkSize;
+    }
+
+    public int getDefaultChunkSize() {
+        return defaultChunkSize;
+    }
+
+    public int chunkSizeFor(long fileSize) {
+        return fileSize >= largeFileThreshold ? largeChunkSize : defaultChunkSize;
+    }
+
+    public GridFSUploadOptions uploadOptions(long fileSize, String contentType, Document metadata) {
+        // Same key GridFsTemplate uses, so GridFsResource still reports the content type
+        metadata.append("_contentType", contentType);
+        return new GridFSUploadOptions()
+                .chunkSizeBytes(chunkSizeFor(fileSize))
+                .metadata(metadata);
+    }
+}
@@ -2,6 +2,8 @@ package com.ben.file.cabinet.model;
 
 import org.bson.types.ObjectId;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.LocalDateTime;
@@ -9,6 +11,7 @@ import java.util.HashSet;
 import java.util.Set;
 
 @Document(collection = "artifact")
+@CompoundIndex(name = "likeCount_id", def = "{ 'likeCount': -1, '_id': 1 }")
 public class Artifact {
 
     @Id
@@ -19,11 +22,26 @@ public class Artifact {
     private long fileSize;
     private LocalDateTime uploadDate;
 
+    @Indexed
     private ObjectId gridFsId;
 
+    // Filled in asynchronously after upload; width/height are as displayed, after EXIF orientation
+    private Integer width;
+    private Integer height;
+    private Integer orientation;
+    private String placeholder;
+    private boolean metadataExtracted;
+
     private int likeCount;
+    // Bumped with every like change, so the leaderboard can tell which of two counts is newer
+    private long likeVersion;
+    @Indexed
     private Set<String> likedByUsers;
 
+    // Set when the artifact is deleted; the storage GC removes the blob and the document afterwards
+    @Indexed(sparse = true)
+    private LocalDateTime deletedDate;
+
     public Artifact() {
         this.uploadDate = LocalDateTime.now();
         this.likeCount = 0;
@@ -86,6 +104,46 @@ public class Artifact {
         this.gridFsId = gridFsId;
     }
 
+    public Integer getWidth() {
+        return width;
+    }
+
+    public void setWidth(Integer width) {
+        this.width = width;
+    }
+
+    public Integer getHeight() {
+        return height;
+    }
+
+    public void setHeight(Integer height) {
+        this.height = height;
+    }
+
+    public Integer getOrientation() {
+        return orientation;
+    }
+
+    public void setOrientation(Integer orientation) {
+        this.orientation = orientation;
+    }
+
+    public String getPlaceholder() {
+        return placeholder;
+    }
+
+    public void setPlaceholder(String placeholder) {
+        this.placeholder = placeholder;
+    }
+
+    public boolean isMetadataExtracted() {
+        return metadataExtracted;
+    }
+
+    public void setMetadataExtracted(boolean metadataExtracted) {
+        this.metadataExtracted = metadataExtracted;
+    }
+
     public int getLikeCount() {
         return likeCount;
     }
@@ -94,6 +152,26 @@ public class Artifact {
         this.likeCount = likeCount;
     }
 
+    public long getLikeVersion() {
+        return likeVersion;
+    }
+
+    public void setLikeVersion(long likeVersion) {
+        this.likeVersion = likeVersion;
+    }
+
+    public LocalDateTime getDeletedDate() {
+        return deletedDate;
+    }
+
+    public void setDeletedDate(LocalDateTime deletedDate) {
+        this.deletedDate = deletedDate;
+    }
+
+    public boolean isDeleted() {
+        return deletedDate != null;
+    }
+
     public Set<String> getLikedByUsers() {
         return likedByUsers;
     }
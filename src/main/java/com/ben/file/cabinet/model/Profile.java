@@ -1,6 +1,7 @@
 package com.ben.file.cabinet.model;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 @Document(collection = "profile")
@@ -10,6 +11,7 @@ public class Profile {
     private String id;
     private String displayName;
     private String email;
+    @Indexed(sparse = true)
     private String avatarId;
 
     public String getId() {
@@ -8,19 +8,25 @@ import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.util.Collection;
+import java.util.List;
 
 @Repository
 public interface ArtifactRepository extends MongoRepository<Artifact, String> {
-    Collection<Artifact> findByFileNameContainingIgnoreCase(String fileName);
+    Collection<Artifact> findByFileNameContainingIgnoreCaseAndDeletedDateIsNull(String fileName);
 
-    Collection<Artifact> findByContentType(String contentType);
+    Collection<Artifact> findByContentTypeAndDeletedDateIsNull(String contentType);
 
-    @Query(value = "{}", fields = "{ 'id': 1, 'fileName': 1, 'contentType': 1, 'fileSize': 1, 'uploadDate': 1, 'likeCount': 1, 'gridFsId': 1 }")
+    long countByDeletedDateIsNull();
+
+    @Query(value = "{ 'deletedDate': null }", fields = "{ 'id': 1, 'fileName': 1, 'contentType': 1, 'fileSize': 1, 'uploadDate': 1, 'likeCount': 1, 'gridFsId': 1, 'width': 1, 'height': 1, 'orientation': 1, 'placeholder': 1 }")
     Page<Artifact> findAllArtifactsMetadata(Pageable pageable);
 
-    @Query(value = "{}", sort = "{ 'likeCount': -1 }")
+    @Query(value = "{ 'deletedDate': null }", sort = "{ 'likeCount': -1, '_id': 1 }")
     Page<Artifact> findAllOrderByLikes(Pageable pageable);
 
-    @Query(value = "{}", sort = "{ 'uploadDate': -1 }")
+    @Query(value = "{ 'deletedDate': null }", sort = "{ 'uploadDate': -1 }")
     Page<Artifact> findAllOrderByUploadDate(Pageable pageable);
+
+    @Query(value = "{ '_id': { $in: ?0 }, 'likedByUsers': ?1, 'deletedDate': null }", fields = "{ '_id': 1 }")
+    List<Artifact> findLikedByUser(Collection<String> ids, String userId);
 }
\ No newline at end of file
@@ -6,17 +6,24 @@ import org.springframework.web.multipart.MultipartFile;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Collection;
+import java.util.List;
+import java.util.Set;
 
 public interface ArtifactService {
 
     // Basic CRUD operations
     Collection<Artifact> get();
     Artifact get(String id);
+    List<Artifact> get(List<String> ids);
     Artifact save(MultipartFile file, String userFileName) throws IOException;
     Artifact remove(String id);
 
+    // Bulk delete: marks the artifacts deleted now, storage is reclaimed in the background
+    long markDeleted(Collection<String> ids);
+
     // File operations
     InputStream getFileData(String id) throws IOException;
+    InputStream getFileData(Artifact artifact) throws IOException;
 
     // Pagination methods for infinite scroll
     Collection<Artifact> get(int page, int size);
@@ -32,6 +39,8 @@ public interface ArtifactService {
     // Future per-user like methods (when auth is implemented)
     Artifact toggleLike(String artifactId, String userId);
     boolean isLikedByUser(String artifactId, String userId);
+    Set<String> getLikedArtifactIds(Collection<String> artifactIds, String userId);
+    void removeLikesByUser(String userId);
 
     // Search methods
     Collection<Artifact> searchByFileName(String fileName);
@@ -0,0 +1,15 @@
+package com.ben.file.cabinet.service;
+
+import org.springframework.data.mongodb.gridfs.GridFsResource;
+
+import java.io.IOException;
+import java.util.Set;
+
+public interface AvatarService {
+
+    Set<Integer> SIZES = Set.of(32, 64, 128);
+
+    // Returns the size x size variant of the avatar blob, generating and storing it on first use.
+    // Returns null when no profile uses that avatar id or the avatar blob does not exist.
+    GridFsResource getVariant(String avatarId, int size) throws IOException;
+}
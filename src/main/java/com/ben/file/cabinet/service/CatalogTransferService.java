@@ -0,0 +1,21 @@
+package com.ben.file.cabinet.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+public interface CatalogTransferService {
+
+    // Writes every live artifact and its blob as a zip archive, incrementally from a Mongo cursor
+    ExportResult exportCatalog(OutputStream out) throws IOException;
+
+    // Loads an archive written by exportCatalog. Artifacts that already exist are skipped,
+    // so an interrupted import can simply be run again with the same archive.
+    ImportResult importCatalog(InputStream in) throws IOException;
+
+    record ExportResult(long artifacts, long bytes, long missingBlobs) {
+    }
+
+    record ImportResult(long imported, long skipped, long failed, boolean complete) {
+    }
+}
@@ -0,0 +1,21 @@
+package com.ben.file.cabinet.service;
+
+import java.util.List;
+
+public interface HotArtifactService {
+
+    // File reads and likes feed time-decayed access scores
+    void recordView(String artifactId);
+    void recordLike(String artifactId);
+    void remove(String artifactId);
+
+    // Current decayed score, 0 for an artifact with no recent access
+    double getScore(String artifactId);
+
+    // Hottest first
+    List<String> getHotIds(int limit);
+
+    // Persists the hottest ids to local disk; loadSnapshot reads them back and seeds the scores
+    void saveSnapshot();
+    List<String> loadSnapshot();
+}
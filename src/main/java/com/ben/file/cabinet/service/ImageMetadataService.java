@@ -0,0 +1,17 @@
+package com.ben.file.cabinet.service;
+
+public interface ImageMetadataService {
+
+    // Queues extraction of width/height/orientation and the blurhash placeholder after an upload
+    void extractAsync(String artifactId);
+
+    // Extracts synchronously, returns false when the image could not be read
+    boolean extract(String artifactId);
+
+    // Processes every artifact without metadata in the background, resuming from the last checkpoint
+    boolean startBackfill();
+    BackfillStatus getBackfillStatus();
+
+    record BackfillStatus(boolean running, long processed, long failed, String lastId) {
+    }
+}
@@ -0,0 +1,17 @@
+package com.ben.file.cabinet.service;
+
+import java.util.List;
+
+public interface LeaderboardService {
+
+    // Returns the ids for the requested page of the likes feed, or null when
+    // the page is outside the in-memory range and must be read from Mongo
+    List<String> getTopLikedIds(int page, int size);
+
+    // Like count changes, uploads and deletes keep the leaderboard current. version is the
+    // artifact's likeVersion after the change; a count older than one already applied is ignored
+    void update(String artifactId, int likeCount, long version);
+    void remove(String artifactId);
+
+    void rebuild();
+}
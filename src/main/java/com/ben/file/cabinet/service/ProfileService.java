@@ -2,13 +2,19 @@ package com.ben.file.cabinet.service;
 
 import com.ben.file.cabinet.model.Profile;
 
-import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
 
 public interface ProfileService {
 
-    Collection<Profile> get();
+    // Page of profiles ordered by id, starting after the cursor id (null for the first page)
+    List<Profile> get(String cursor, int limit);
     Profile get(String id);
+    List<Profile> get(List<String> ids);
     Profile save(String displayName, String email);
     Profile update(String id, String email, String displayName, String AvatarId);
     Profile remove(String id);
+
+    // All profiles read from a single Mongo cursor; the caller must close the stream
+    Stream<Profile> stream();
 }
@@ -0,0 +1,11 @@
+package com.ben.file.cabinet.service;
+
+public interface StorageGcService {
+
+    // Removes the blobs and documents of artifacts marked deleted, returns the number purged
+    int purgeDeletedArtifacts();
+
+    // Removes GridFS files no artifact or profile references, and chunks left without a file
+    int collectOrphanFiles();
+    int collectOrphanChunks();
+}
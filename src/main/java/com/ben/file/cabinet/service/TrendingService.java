@@ -0,0 +1,18 @@
+package com.ben.file.cabinet.service;
+
+import java.util.List;
+
+public interface TrendingService {
+
+    // Like events feed the time-decayed scores, +1 for a like and -1 for an unlike
+    void recordLike(String artifactId, int delta);
+    void remove(String artifactId);
+
+    // Pages through the last ranked snapshot; cursor is null for the first page
+    TrendingPage getPage(String cursor, int page, int size);
+
+    void refresh();
+
+    record TrendingPage(List<String> artifactIds, String nextCursor, int totalCount) {
+    }
+}
@@ -0,0 +1,20 @@
+package com.ben.file.cabinet.service;
+
+import java.util.Map;
+
+public interface WarmupService {
+
+    // Progress of preloading the artifacts that were hot before the last shutdown
+    WarmupStatus getStatus();
+
+    // True once the preload has finished (or failed), or the readiness timeout has passed
+    boolean isReady();
+
+    enum State {
+        PENDING, RUNNING, COMPLETE, FAILED
+    }
+
+    record WarmupStatus(State state, boolean ready, int hotArtifacts, int preloadedArtifacts, long preloadedBytes,
+                        long durationMillis, Map<String, Object> artifactCache, Map<String, Object> blobCache) {
+    }
+}
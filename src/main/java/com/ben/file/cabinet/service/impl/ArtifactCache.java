@@ -0,0 +1,84 @@
+package com.ben.file.cabinet.service.impl;
+
+import com.ben.file.cabinet.model.Artifact;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Artifact documents of the hot set, preloaded by the warm-up so the first views after a start
+// do not each wait on Mongo. Only the warm-up fills it and every write to an artifact evicts it,
+// so a cached document is never older than the last write. Entries expire after
+// expire-after-ms; by then the regular read path has warmed up.
+@Component
+class ArtifactCache {
+
+    @Value("${file.cabinet.artifact-cache.max-entries:1000}")
+    private int maxEntries;
+
+    @Value("${file.cabinet.artifact-cache.expire-after-ms:600000}")
+    private long expireAfterMillis;
+
+    private final Map<String, Cached> entries = new ConcurrentHashMap<>();
+    // Ids written while a fill is reading from Mongo; the fill must not put back what it read before the write
+    private Set<String> evictedDuringFill;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    Artifact get(String id) {
+        Cached cached = entries.get(id);
+        if (cached != null && System.currentTimeMillis() - cached.loadedMillis() > expireAfterMillis) {
+            entries.remove(id, cached);
+            cached = null;
+        }
+        (cached == null ? misses : hits).incrementAndGet();
+        return cached == null ? null : cached.artifact();
+    }
+
+    synchronized void beginFill() {
+        evictedDuringFill = new HashSet<>();
+    }
+
+    synchronized void put(Artifact artifact) {
+        if (entries.size() >= maxEntries
+                || (evictedDuringFill != null && evictedDuringFill.contains(artifact.getId()))) {
+            return;
+        }
+        entries.put(artifact.getId(), new Cached(artifact, System.currentTimeMillis()));
+    }
+
+    synchronized void endFill() {
+        evictedDuringFill = null;
+    }
+
+    synchronized void evict(String id) {
+        entries.remove(id);
+        if (evictedDuringFill != null) {
+            evictedDuringFill.add(id);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${file.cabinet.artifact-cache.expire-interval-ms:60000}")
+    public void expire() {
+        long cutoff = System.currentTimeMillis() - expireAfterMillis;
+        entries.values().removeIf(cached -> cached.loadedMillis() < cutoff);
+    }
+
+    synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("entries", entries.size());
+        stats.put("maxEntries", maxEntries);
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        return stats;
+    }
+
+    private record Cached(Artifact artifact, long loadedMillis) {
+    }
+}
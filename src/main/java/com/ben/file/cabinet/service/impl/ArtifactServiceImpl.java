@@ -1,27 +1,52 @@
 package com.ben.file.cabinet.service.impl;
 
 import com.mongodb.client.gridfs.GridFSBucket;
+import com.mongodb.client.gridfs.GridFSDownloadStream;
 import com.mongodb.client.gridfs.model.GridFSFile;
+import com.ben.file.cabinet.GridFsChunkSizePolicy;
 import com.ben.file.cabinet.model.Artifact;
 import com.ben.file.cabinet.repository.ArtifactRepository;
 import com.ben.file.cabinet.service.ArtifactService;
+import com.ben.file.cabinet.service.HotArtifactService;
+import com.ben.file.cabinet.service.ImageMetadataService;
+import com.ben.file.cabinet.service.LeaderboardService;
+import com.ben.file.cabinet.service.TrendingService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.bson.Document;
 import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.data.mongodb.gridfs.GridFsTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 public class ArtifactServiceImpl implements ArtifactService {
@@ -29,20 +54,86 @@ public class ArtifactServiceImpl implements ArtifactService {
     @Autowired
     private ArtifactRepository artifactRepository;
 
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
     @Autowired
     private GridFsTemplate gridFsTemplate;
 
     @Autowired
     private GridFSBucket gridFSBucket;
 
+    @Autowired
+    private GridFsChunkSizePolicy chunkSizePolicy;
+
+    @Autowired
+    private LeaderboardService leaderboardService;
+
+    @Autowired
+    private TrendingService trendingService;
+
+    @Autowired
+    private ImageMetadataService imageMetadataService;
+
+    @Autowired
+    private HotArtifactService hotArtifactService;
+
+    @Autowired
+    private BlobCache blobCache;
+
+    @Autowired
+    private ArtifactCache artifactCache;
+
+    @Value("${file.cabinet.gridfs.prefetch-chunks:4}")
+    private int prefetchChunks;
+
+    @Value("${file.cabinet.gridfs.prefetch-threads:32}")
+    private int prefetchThreads;
+
+    // Hot score (recent views, likes count more) a file needs before a download copies it into the blob cache
+    @Value("${file.cabinet.blob-cache.min-score:3}")
+    private double blobCacheMinScore;
+
+    private ThreadPoolExecutor prefetchExecutor;
+
+    @PostConstruct
+    public void start() {
+        // No queue: when every prefetch thread is busy, downloads fall back to a plain stream
+        prefetchExecutor = new ThreadPoolExecutor(0, prefetchThreads, 60, TimeUnit.SECONDS,
+                new SynchronousQueue<>(),
+                new CustomizableThreadFactory("gridfs-prefetch-"));
+    }
+
+    @PreDestroy
+    public void stop() {
+        prefetchExecutor.shutdownNow();
+    }
+
     @Override
     public Collection<Artifact> get() {
         return artifactRepository.findAll();
     }
 
+    // Served from the preloaded hot set right after a start, from Mongo otherwise
     @Override
     public Artifact get(String id) {
-        return artifactRepository.findById(id).orElse(null);
+        Artifact cached = artifactCache.get(id);
+        return cached != null ? cached : findLive(id);
+    }
+
+    // Fetches the given artifacts keeping the order of the ids, skipping any that no longer exist
+    @Override
+    public List<Artifact> get(List<String> ids) {
+        Map<String, Artifact> artifactsById = artifactRepository.findAllById(ids).stream()
+                .collect(Collectors.toMap(Artifact::getId, Function.identity()));
+        List<Artifact> artifacts = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            Artifact artifact = artifactsById.get(id);
+            if (artifact != null && !artifact.isDeleted()) {
+                artifacts.add(artifact);
+            }
+        }
+        return artifacts;
     }
 
     @Override
@@ -57,12 +148,14 @@ public class ArtifactServiceImpl implements ArtifactService {
                 .append("contentType", file.getContentType())
                 .append("fileSize", file.getSize());
 
-        ObjectId gridFsId = gridFsTemplate.store(
-                file.getInputStream(),
-                uniqueGridFsFileName,
-                file.getContentType(),
-                metadata
-        );
+        ObjectId gridFsId;
+        try (InputStream in = file.getInputStream()) {
+            gridFsId = gridFSBucket.uploadFromStream(
+                    uniqueGridFsFileName,
+                    in,
+                    chunkSizePolicy.uploadOptions(file.getSize(), file.getContentType(), metadata)
+            );
+        }
 
         Artifact artifact = new Artifact();
         artifact.setId(UUID.randomUUID().toString());
@@ -71,32 +164,86 @@ public class ArtifactServiceImpl implements ArtifactService {
         artifact.setFileSize(file.getSize());
         artifact.setGridFsId(gridFsId);
 
-        return artifactRepository.save(artifact);
+        Artifact savedArtifact = artifactRepository.save(artifact);
+        leaderboardService.update(savedArtifact.getId(), savedArtifact.getLikeCount(), savedArtifact.getLikeVersion());
+        imageMetadataService.extractAsync(savedArtifact.getId());
+        return savedArtifact;
     }
 
     @Override
     public Artifact remove(String id) {
-        Artifact artifact = artifactRepository.findById(id).orElse(null);
+        Artifact artifact = findLive(id);
         if (artifact != null) {
+            // Mark first so that a crash part way through is finished by the storage GC
+            markDeleted(List.of(id));
             gridFsTemplate.delete(Query.query(Criteria.where("_id").is(artifact.getGridFsId())));
+            blobCache.remove(artifact.getGridFsId());
             artifactRepository.deleteById(id);
         }
         return artifact;
     }
 
+    @Override
+    public long markDeleted(Collection<String> ids) {
+        Query query = new Query(Criteria.where("_id").in(ids).and("deletedDate").is(null));
+        long marked = mongoTemplate.updateMulti(query, Update.update("deletedDate", LocalDateTime.now()), Artifact.class)
+                .getModifiedCount();
+
+        for (String id : ids) {
+            artifactCache.evict(id);
+            leaderboardService.remove(id);
+            trendingService.remove(id);
+            hotArtifactService.remove(id);
+        }
+        return marked;
+    }
+
     @Override
     public InputStream getFileData(String id) throws IOException {
-        Artifact artifact = artifactRepository.findById(id).orElse(null);
+        Artifact artifact = findLive(id);
         if (artifact == null) {
             throw new IOException("Artifact not found");
         }
+        return getFileData(artifact);
+    }
+
+    @Override
+    public InputStream getFileData(Artifact artifact) throws IOException {
+        hotArtifactService.recordView(artifact.getId());
+
+        // Preloaded at startup for the artifacts that were hot before the restart, filled below otherwise
+        byte[] cached = blobCache.get(artifact.getGridFsId());
+        if (cached != null) {
+            return new ByteArrayInputStream(cached);
+        }
+        InputStream stream = openFile(artifact);
+        // Only the first download of a hot file copies it, the others stream while that one fills the cache
+        if (blobCache.accepts(artifact.getFileSize())
+                && hotArtifactService.getScore(artifact.getId()) >= blobCacheMinScore
+                && blobCache.beginFill(artifact.getGridFsId())) {
+            return new CachingInputStream(stream, blobCache, artifact.getGridFsId(), (int) artifact.getFileSize());
+        }
+        return stream;
+    }
 
+    private InputStream openFile(Artifact artifact) throws IOException {
         GridFSFile gridFSFile = gridFsTemplate.findOne(Query.query(Criteria.where("_id").is(artifact.getGridFsId())));
         if (gridFSFile == null) {
             throw new IOException("File not found in GridFS");
         }
 
-        return gridFSBucket.openDownloadStream(artifact.getGridFsId());
+        // Fetch only as many chunks per round trip as we buffer, so the first bytes go out early
+        GridFSDownloadStream stream = gridFSBucket.openDownloadStream(artifact.getGridFsId())
+                .batchSize(prefetchChunks);
+        if (gridFSFile.getLength() <= gridFSFile.getChunkSize()) {
+            return stream;
+        }
+
+        try {
+            return new PrefetchingInputStream(stream, gridFSFile.getChunkSize(), prefetchChunks, prefetchExecutor);
+        } catch (RejectedExecutionException e) {
+            return stream;
+        }
     }
 
     @Override
@@ -108,6 +255,12 @@ public class ArtifactServiceImpl implements ArtifactService {
 
     @Override
     public Collection<Artifact> getOrderByLikes(int page, int size) {
+        // The first pages come from the in-memory leaderboard, the long tail from the likeCount index
+        List<String> ids = leaderboardService.getTopLikedIds(page, size);
+        if (ids != null) {
+            return get(ids);
+        }
+
         Pageable pageable = PageRequest.of(page, size);
         Page<Artifact> artifactPage = artifactRepository.findAllOrderByLikes(pageable);
         return artifactPage.getContent();
@@ -129,56 +282,105 @@ public class ArtifactServiceImpl implements ArtifactService {
 
     @Override
     public long getTotalCount() {
-        return artifactRepository.count();
+        return artifactRepository.countByDeletedDateIsNull();
     }
 
     @Override
     public Artifact incrementLike(String artifactId) {
-        Artifact artifact = artifactRepository.findById(artifactId).orElse(null);
-        if (artifact != null) {
-            artifact.setLikeCount(artifact.getLikeCount() + 1);
-            return artifactRepository.save(artifact);
-        }
-        return null;
+        return changeLikes(artifactId, liveArtifact(artifactId), new Update().inc("likeCount", 1), 1);
     }
 
     @Override
     public Artifact decrementLike(String artifactId) {
-        Artifact artifact = artifactRepository.findById(artifactId).orElse(null);
-        if (artifact != null && artifact.getLikeCount() > 0) {
-            artifact.setLikeCount(artifact.getLikeCount() - 1);
-            return artifactRepository.save(artifact);
-        }
-        return artifact;
+        Criteria positive = liveArtifact(artifactId).and("likeCount").gt(0);
+        Artifact artifact = changeLikes(artifactId, positive, new Update().inc("likeCount", -1), -1);
+        return artifact != null ? artifact : findLive(artifactId);
     }
 
     @Override
     public Artifact toggleLike(String artifactId, String userId) {
-        Artifact artifact = artifactRepository.findById(artifactId).orElse(null);
+        Criteria liked = liveArtifact(artifactId).and("likedByUsers").is(userId);
+        Artifact artifact = changeLikes(artifactId, liked,
+                new Update().pull("likedByUsers", userId).inc("likeCount", -1), -1);
         if (artifact != null) {
-            if (artifact.isLikedByUser(userId)) {
-                artifact.removeLike(userId);
-            } else {
-                artifact.addLike(userId);
-            }
-            return artifactRepository.save(artifact);
+            return artifact;
         }
-        return null;
+
+        Criteria notLiked = liveArtifact(artifactId).and("likedByUsers").ne(userId);
+        artifact = changeLikes(artifactId, notLiked,
+                new Update().addToSet("likedByUsers", userId).inc("likeCount", 1), 1);
+        // Neither matched: deleted, or the same user toggled again in between and this is the result
+        return artifact != null ? artifact : findLive(artifactId);
     }
 
     @Override
     public boolean isLikedByUser(String artifactId, String userId) {
-        Artifact artifact = artifactRepository.findById(artifactId).orElse(null);
+        Artifact artifact = findLive(artifactId);
         return artifact != null && artifact.isLikedByUser(userId);
     }
 
+    @Override
+    public Set<String> getLikedArtifactIds(Collection<String> artifactIds, String userId) {
+        return artifactRepository.findLikedByUser(artifactIds, userId).stream()
+                .map(Artifact::getId)
+                .collect(Collectors.toSet());
+    }
+
     @Override
     public Collection<Artifact> searchByFileName(String fileName) {
-        return artifactRepository.findByFileNameContainingIgnoreCase(fileName);
+        return artifactRepository.findByFileNameContainingIgnoreCaseAndDeletedDateIsNull(fileName);
     }
 
     @Override
     public Collection<Artifact> getByContentType(String contentType) {
-        return artifactRepository.findByContentType(contentType);
+        return artifactRepository.findByContentTypeAndDeletedDateIsNull(contentType);
+    }
+
+    @Override
+    public void removeLikesByUser(String userId) {
+        Query likedQuery = new Query(Criteria.where("likedByUsers").is(userId));
+        likedQuery.fields().include("_id");
+        List<String> ids = mongoTemplate.find(likedQuery, Artifact.class).stream()
+                .map(Artifact::getId)
+                .collect(Collectors.toList());
+
+        // One artifact at a time, so each one gets its new count and likeVersion back for the leaderboard
+        for (String id : ids) {
+            changeLikes(id, liveArtifact(id).and("likedByUsers").is(userId),
+                    new Update().pull("likedByUsers", userId).inc("likeCount", -1), 0);
+        }
+    }
+
+    private Artifact findLive(String id) {
+        Artifact artifact = artifactRepository.findById(id).orElse(null);
+        return artifact == null || artifact.isDeleted() ? null : artifact;
+    }
+
+    private Criteria liveArtifact(String id) {
+        return Criteria.where("_id").is(id).and("deletedDate").is(null);
+    }
+
+    /*
+     * Applies a like change as a single atomic update and hands the resulting count to the
+     * leaderboard. Two concurrent likes can reach the leaderboard in the opposite order to their
+     * writes, so each write also bumps likeVersion and the leaderboard keeps the newest count.
+     * Returns null when the criteria matched nothing.
+     */
+    private Artifact changeLikes(String artifactId, Criteria criteria, Update update, int delta) {
+        Artifact artifact = mongoTemplate.findAndModify(new Query(criteria), update.inc("likeVersion", 1),
+                FindAndModifyOptions.options().returnNew(true), Artifact.class);
+        artifactCache.evict(artifactId);
+        if (artifact == null) {
+            return null;
+        }
+        leaderboardService.update(artifact.getId(), artifact.getLikeCount(), artifact.getLikeVersion());
+
+        if (delta != 0) {
+            trendingService.recordLike(artifact.getId(), delta);
+        }
+        if (delta > 0) {
+            hotArtifactService.recordLike(artifact.getId());
+        }
+        return artifact;
     }
 }
\ No newline at end of file
@@ -0,0 +1,95 @@
+package com.ben.file.cabinet.service.impl;
+
+import com.ben.file.cabinet.model.Profile;
+import com.ben.file.cabinet.service.AvatarService;
+import com.mongodb.MongoGridFSException;
+import com.mongodb.client.gridfs.GridFSBucket;
+import com.mongodb.client.gridfs.model.GridFSFile;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.gridfs.GridFsResource;
+import org.springframework.data.mongodb.gridfs.GridFsTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/*
+ * Avatar variants are stored as their own GridFS files named avatar_<avatarId>_<size>, with
+ * metadata.avatarSource pointing back at the original so the storage GC keeps them exactly
+ * as long as a profile still uses that avatar.
+ */
+@Service
+public class AvatarServiceImpl implements AvatarService {
+
+    @Autowired
+    private GridFsTemplate gridFsTemplate;
+
+    @Autowired
+    private GridFSBucket gridFSBucket;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Override
+    public GridFsResource getVariant(String avatarId, int size) throws IOException {
+        if (!SIZES.contains(size)) {
+            throw new IllegalArgumentException("Unsupported avatar size " + size);
+        }
+
+        String variantName = "avatar_" + avatarId + "_" + size;
+        GridFSFile variant = findVariant(variantName);
+        if (variant == null) {
+            variant = createVariant(avatarId, size, variantName);
+        }
+        return variant == null ? null : gridFsTemplate.getResource(variant);
+    }
+
+    private GridFSFile findVariant(String variantName) {
+        // Two requests racing on the first view can both store a variant; always serve the oldest
+        Query query = Query.query(Criteria.where("filename").is(variantName))
+                .with(Sort.by("uploadDate"));
+        return gridFsTemplate.findOne(query);
+    }
+
+    private GridFSFile createVariant(String avatarId, int size, String variantName) throws IOException {
+        // Only a profile's current avatar gets variants, not artifact photos or earlier variants in the same bucket
+        if (!ObjectId.isValid(avatarId)
+                || !mongoTemplate.exists(Query.query(Criteria.where("avatarId").is(avatarId)), Profile.class)) {
+            return null;
+        }
+
+        BufferedImage source;
+        try (InputStream in = gridFSBucket.openDownloadStream(new ObjectId(avatarId))) {
+            source = ImageUtils.readSubsampled(in, size * 2);
+        } catch (MongoGridFSException e) {
+            return null;
+        }
+        if (source == null) {
+            throw new IOException("Avatar is not a readable image");
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(ImageUtils.squareThumbnail(source, size), "png", out);
+
+        Document metadata = new Document()
+                .append("avatarSource", avatarId)
+                .append("size", size);
+        ObjectId variantId = gridFsTemplate.store(
+                new ByteArrayInputStream(out.toByteArray()),
+                variantName,
+                "image/png",
+                metadata
+        );
+        return gridFsTemplate.findOne(Query.query(Criteria.where("_id").is(variantId)));
+    }
+}
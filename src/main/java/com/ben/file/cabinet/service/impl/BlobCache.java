@@ -0,0 +1,126 @@
+package com.ben.file.cabinet.service.impl;
+
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+// LRU cache of whole GridFS files, bounded by total bytes. GridFS files are never modified
+// in place, so an entry stays valid until its file is deleted (the storage GC evicts it then).
+// Entries nobody has read for expire-after-idle-ms are dropped, so a burst does not pin memory.
+@Component
+class BlobCache {
+
+    @Value("${file.cabinet.blob-cache.max-bytes:268435456}")
+    private long maxBytes;
+
+    @Value("${file.cabinet.blob-cache.max-entry-bytes:16777216}")
+    private long maxEntryBytes;
+
+    @Value("${file.cabinet.blob-cache.expire-after-idle-ms:900000}")
+    private long expireAfterIdleMillis;
+
+    private final LinkedHashMap<ObjectId, Blob> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // Files a download is currently copying in; concurrent downloads of the same file stream without a copy
+    private final Set<ObjectId> filling = new HashSet<>();
+    private long totalBytes;
+    private long hits;
+    private long misses;
+    private long expired;
+
+    synchronized byte[] get(ObjectId gridFsId) {
+        Blob blob = entries.get(gridFsId);
+        if (blob == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        blob.lastAccessMillis = System.currentTimeMillis();
+        return blob.data;
+    }
+
+    synchronized void put(ObjectId gridFsId, byte[] data) {
+        if (!accepts(data.length)) {
+            return;
+        }
+        Blob previous = entries.put(gridFsId, new Blob(data, System.currentTimeMillis()));
+        totalBytes += data.length - (previous == null ? 0 : previous.data.length);
+
+        Iterator<Blob> eldest = entries.values().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            totalBytes -= eldest.next().data.length;
+            eldest.remove();
+        }
+    }
+
+    // True when the caller may copy the file in, and must then call endFill whatever happens
+    synchronized boolean beginFill(ObjectId gridFsId) {
+        return !entries.containsKey(gridFsId) && filling.add(gridFsId);
+    }
+
+    // Puts the copy when there is one; null gives up the fill so a later download can try again
+    synchronized void endFill(ObjectId gridFsId, byte[] data) {
+        filling.remove(gridFsId);
+        if (data != null) {
+            put(gridFsId, data);
+        }
+    }
+
+    synchronized void remove(ObjectId gridFsId) {
+        Blob blob = entries.remove(gridFsId);
+        if (blob != null) {
+            totalBytes -= blob.data.length;
+        }
+    }
+
+    // Access order puts the idle entries first, so the sweep stops at the first recently read one
+    @Scheduled(fixedDelayString = "${file.cabinet.blob-cache.expire-interval-ms:60000}")
+    public synchronized void expireIdle() {
+        long cutoff = System.currentTimeMillis() - expireAfterIdleMillis;
+        Iterator<Blob> eldest = entries.values().iterator();
+        while (eldest.hasNext()) {
+            Blob blob = eldest.next();
+            if (blob.lastAccessMillis > cutoff) {
+                break;
+            }
+            totalBytes -= blob.data.length;
+            eldest.remove();
+            expired++;
+        }
+    }
+
+    boolean accepts(long size) {
+        return size <= maxEntryBytes && size <= maxBytes;
+    }
+
+    long getMaxBytes() {
+        return maxBytes;
+    }
+
+    synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("entries", entries.size());
+        stats.put("bytes", totalBytes);
+        stats.put("maxBytes", maxBytes);
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("expired", expired);
+        return stats;
+    }
+
+    private static class Blob {
+        private final byte[] data;
+        private long lastAccessMillis;
+
+        private Blob(byte[] data, long lastAccessMillis) {
+            this.data = data;
+            this.lastAccessMillis = lastAccessMillis;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.ben.file.cabinet.service.impl;
+
+import org.bson.types.ObjectId;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+// Copies a GridFS file into the blob cache as it is streamed to the client. Only a download read
+// to the end with the expected length is cached; an aborted one just drops its copy. Created only
+// after BlobCache.beginFill, and always ends the fill, so one download per file holds a copy.
+class CachingInputStream extends FilterInputStream {
+
+    private final BlobCache blobCache;
+    private final ObjectId gridFsId;
+    private byte[] copy;
+    private int length;
+    private boolean ended;
+
+    CachingInputStream(InputStream source, BlobCache blobCache, ObjectId gridFsId, int expectedLength) {
+        super(source);
+        this.blobCache = blobCache;
+        this.gridFsId = gridFsId;
+        this.copy = new byte[expectedLength];
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b == -1) {
+            complete();
+        } else if (copy != null) {
+            if (length < copy.length) {
+                copy[length++] = (byte) b;
+            } else {
+                copy = null;
+            }
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int count) throws IOException {
+        int read = super.read(buffer, offset, count);
+        if (read == -1) {
+            complete();
+        } else if (copy != null) {
+            if (length + read <= copy.length) {
+                System.arraycopy(buffer, offset, copy, length, read);
+                length += read;
+            } else {
+                copy = null;
+            }
+        }
+        return read;
+    }
+
+    // Skipping would leave holes in the copy
+    @Override
+    public long skip(long n) throws IOException {
+        copy = null;
+        return super.skip(n);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    // A reader that stops at the content length without waiting for -1 has still read it all
+    @Override
+    public void close() throws IOException {
+        complete();
+        super.close();
+    }
+
+    private void complete() {
+        if (copy != null && length == copy.length) {
+            blobCache.endFill(gridFsId, copy);
+        } else if (!ended) {
+            blobCache.endFill(gridFsId, null);
+        }
+        ended = true;
+        copy = null;
+    }
+}
@@ -0,0 +1,396 @@
+package com.ben.file.cabinet.service.impl;
+
+import com.ben.file.cabinet.GridFsChunkSizePolicy;
+import com.ben.file.cabinet.service.CatalogTransferService;
+import com.ben.file.cabinet.service.LeaderboardService;
+import com.mongodb.MongoGridFSException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.gridfs.GridFSBucket;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.bson.Document;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonWriterSettings;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/*
+ * Archive layout, in this order:
+ *   artifacts/<id>.json  the artifact document (extended JSON) with the sha256 and length of its blob
+ *   blobs/<id>           the GridFS file contents, stored uncompressed since images already are
+ *   ...
+ *   manifest.json        counts, written last once they are known
+ *
+ * Both directions keep at most `window` blobs in memory: export reads the next blobs from GridFS
+ * while earlier ones are written out, import uploads blobs while the following entries are read.
+ * Imported blobs get new GridFS ids; a blob uploaded by an interrupted import whose artifact was
+ * never inserted is removed by the storage GC like any other orphan.
+ */
+@Service
+public class CatalogTransferServiceImpl implements CatalogTransferService {
+
+    private static final Logger log = LoggerFactory.getLogger(CatalogTransferServiceImpl.class);
+
+    private static final String COLLECTION = "artifact";
+    private static final String ARTIFACT_PREFIX = "artifacts/";
+    private static final String BLOB_PREFIX = "blobs/";
+    private static final String MANIFEST = "manifest.json";
+    private static final int FORMAT_VERSION = 1;
+    private static final int MAX_JSON_BYTES = 1024 * 1024;
+    private static final int DUPLICATE_KEY = 11000;
+
+    private static final JsonWriterSettings JSON_SETTINGS = JsonWriterSettings.builder()
+            .outputMode(JsonMode.EXTENDED)
+            .build();
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private GridFSBucket gridFSBucket;
+
+    @Autowired
+    private GridFsChunkSizePolicy chunkSizePolicy;
+
+    @Autowired
+    private LeaderboardService leaderboardService;
+
+    @Value("${file.cabinet.catalog.threads:4}")
+    private int threads;
+
+    @Value("${file.cabinet.catalog.window:16}")
+    private int window;
+
+    @Value("${file.cabinet.catalog.batch-size:100}")
+    private int batchSize;
+
+    @Value("${file.cabinet.catalog.max-blob-bytes:67108864}")
+    private int maxBlobBytes;
+
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void start() {
+        executor = Executors.newFixedThreadPool(threads, new CustomizableThreadFactory("catalog-transfer-"));
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public ExportResult exportCatalog(OutputStream out) throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(out);
+        Deque<Future<ExportEntry>> pending = new ArrayDeque<>();
+        long artifacts = 0;
+        long bytes = 0;
+        long missingBlobs = 0;
+
+        Query query = new Query(Criteria.where("deletedDate").is(null))
+                .with(Sort.by("_id"))
+                .cursorBatchSize(batchSize);
+        try (Stream<Document> documents = mongoTemplate.stream(query, Document.class, COLLECTION)) {
+            Iterator<Document> iterator = documents.iterator();
+            while (iterator.hasNext() || !pending.isEmpty()) {
+                // Keep the window full, then write out the oldest entry so the archive stays in cursor order
+                while (iterator.hasNext() && pending.size() < window) {
+                    Document artifact = iterator.next();
+                    pending.add(executor.submit(() -> readBlob(artifact)));
+                }
+
+                ExportEntry entry = await(pending.poll());
+                if (entry.blob() == null) {
+                    log.warn("Skipping artifact {} in export, its GridFS file is missing", entry.artifact().get("_id"));
+                    missingBlobs++;
+                    continue;
+                }
+                writeEntry(zip, entry);
+                artifacts++;
+                bytes += entry.blob().length;
+            }
+        } finally {
+            pending.forEach(future -> future.cancel(true));
+        }
+
+        Document manifest = new Document("format", FORMAT_VERSION)
+                .append("exportedDate", new Date())
+                .append("artifacts", artifacts)
+                .append("bytes", bytes);
+        zip.putNextEntry(new ZipEntry(MANIFEST));
+        zip.write(manifest.toJson(JSON_SETTINGS).getBytes(StandardCharsets.UTF_8));
+        zip.closeEntry();
+        zip.finish();
+        zip.flush();
+
+        log.info("Exported {} artifacts ({} bytes), {} skipped with missing files", artifacts, bytes, missingBlobs);
+        return new ExportResult(artifacts, bytes, missingBlobs);
+    }
+
+    @Override
+    public ImportResult importCatalog(InputStream in) throws IOException {
+        ZipInputStream zip = new ZipInputStream(in);
+        Deque<Future<Document>> pending = new ArrayDeque<>();
+        List<Document> batch = new ArrayList<>(batchSize);
+        ImportCounts counts = new ImportCounts();
+        Document record = null;
+        Document manifest = null;
+
+        try {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                String name = entry.getName();
+                if (name.startsWith(ARTIFACT_PREFIX)) {
+                    if (record != null) {
+                        counts.failed++; // the previous artifact had no blob entry
+                    }
+                    byte[] json = readEntry(zip, MAX_JSON_BYTES);
+                    record = json == null ? null : Document.parse(new String(json, StandardCharsets.UTF_8));
+                    if (record == null) {
+                        counts.failed++;
+                    }
+
+                } else if (name.startsWith(BLOB_PREFIX)) {
+                    Document artifactRecord = record;
+                    record = null;
+                    byte[] blob = readEntry(zip, maxBlobBytes);
+                    if (artifactRecord == null || blob == null
+                            || !name.substring(BLOB_PREFIX.length()).equals(artifactId(artifactRecord))) {
+                        log.warn("Skipping archive entry {}, it is too large or has no matching artifact", name);
+                        counts.failed++;
+                        continue;
+                    }
+
+                    pending.add(executor.submit(() -> importArtifact(artifactRecord, blob)));
+                    if (pending.size() >= window) {
+                        collect(pending.poll(), batch, counts);
+                    }
+
+                } else if (name.equals(MANIFEST)) {
+                    byte[] json = readEntry(zip, MAX_JSON_BYTES);
+                    manifest = json == null ? null : Document.parse(new String(json, StandardCharsets.UTF_8));
+                }
+            }
+            if (record != null) {
+                counts.failed++;
+            }
+
+            while (!pending.isEmpty()) {
+                collect(pending.poll(), batch, counts);
+            }
+            insert(batch, counts);
+        } finally {
+            pending.forEach(future -> future.cancel(true));
+        }
+
+        // Without the manifest the archive was cut short, with it every artifact must be accounted for
+        Number expected = manifest == null ? null : manifest.get("artifacts", Number.class);
+        boolean complete = expected != null && counts.failed == 0
+                && counts.imported + counts.skipped == expected.longValue();
+        log.info("Imported {} artifacts, skipped {} existing, {} failed, complete: {}",
+                counts.imported, counts.skipped, counts.failed, complete);
+        return new ImportResult(counts.imported, counts.skipped, counts.failed, complete);
+    }
+
+    private ExportEntry readBlob(Document artifact) throws IOException {
+        if (!(artifact.get("gridFsId") instanceof ObjectId gridFsId)) {
+            return new ExportEntry(artifact, null, null);
+        }
+        try (InputStream in = gridFSBucket.openDownloadStream(gridFsId)) {
+            byte[] blob = in.readAllBytes();
+            return new ExportEntry(artifact, blob, sha256(blob));
+        } catch (MongoGridFSException e) {
+            return new ExportEntry(artifact, null, null);
+        }
+    }
+
+    private void writeEntry(ZipOutputStream zip, ExportEntry entry) throws IOException {
+        String id = entry.artifact().getString("_id");
+        Document record = new Document("artifact", entry.artifact())
+                .append("sha256", entry.sha256())
+                .append("length", entry.blob().length);
+        zip.putNextEntry(new ZipEntry(ARTIFACT_PREFIX + id + ".json"));
+        zip.write(record.toJson(JSON_SETTINGS).getBytes(StandardCharsets.UTF_8));
+        zip.closeEntry();
+
+        // Stored entries need their size and CRC up front, which we have since the blob is in memory
+        CRC32 crc = new CRC32();
+        crc.update(entry.blob());
+        ZipEntry blobEntry = new ZipEntry(BLOB_PREFIX + id);
+        blobEntry.setMethod(ZipEntry.STORED);
+        blobEntry.setSize(entry.blob().length);
+        blobEntry.setCompressedSize(entry.blob().length);
+        blobEntry.setCrc(crc.getValue());
+        zip.putNextEntry(blobEntry);
+        zip.write(entry.blob());
+        zip.closeEntry();
+    }
+
+    // Returns the artifact document to insert, or null when it already exists
+    private Document importArtifact(Document record, byte[] blob) throws IOException {
+        Document artifact = record.get("artifact", Document.class);
+        String id = artifact.getString("_id");
+        if (mongoTemplate.exists(Query.query(Criteria.where("_id").is(id)), COLLECTION)) {
+            return null;
+        }
+
+        Number length = record.get("length", Number.class);
+        if (length == null || length.longValue() != blob.length || !sha256(blob).equals(record.getString("sha256"))) {
+            throw new IOException("Checksum mismatch for artifact " + id);
+        }
+
+        String fileName = artifact.getString("fileName");
+        String contentType = artifact.getString("contentType");
+        Document metadata = new Document()
+                .append("originalFileName", fileName)
+                .append("userFileName", fileName)
+                .append("contentType", contentType)
+                .append("fileSize", (long) blob.length);
+        ObjectId gridFsId = gridFSBucket.uploadFromStream(
+                UUID.randomUUID() + "_" + fileName,
+                new ByteArrayInputStream(blob),
+                chunkSizePolicy.uploadOptions(blob.length, contentType, metadata));
+
+        artifact.put("gridFsId", gridFsId);
+        return artifact;
+    }
+
+    private void collect(Future<Document> future, List<Document> batch, ImportCounts counts) throws IOException {
+        Document artifact;
+        try {
+            artifact = await(future);
+        } catch (InterruptedIOException e) {
+            throw e;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not import artifact", e);
+            counts.failed++;
+            return;
+        }
+
+        if (artifact == null) {
+            counts.skipped++;
+            return;
+        }
+        batch.add(artifact);
+        if (batch.size() >= batchSize) {
+            insert(batch, counts);
+        }
+    }
+
+    private void insert(List<Document> batch, ImportCounts counts) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        Set<Integer> failedIndexes = new HashSet<>();
+        try {
+            mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, COLLECTION).insert(batch).execute();
+        } catch (BulkOperationException e) {
+            // Another import got there first for duplicates; their uploaded blobs are left to the storage GC
+            for (BulkWriteError error : e.getErrors()) {
+                failedIndexes.add(error.getIndex());
+                if (error.getCode() == DUPLICATE_KEY) {
+                    counts.skipped++;
+                } else {
+                    counts.failed++;
+                }
+            }
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            if (!failedIndexes.contains(i)) {
+                Document artifact = batch.get(i);
+                Number likeCount = artifact.get("likeCount", Number.class);
+                Number likeVersion = artifact.get("likeVersion", Number.class);
+                leaderboardService.update(artifact.getString("_id"), likeCount == null ? 0 : likeCount.intValue(),
+                        likeVersion == null ? 0 : likeVersion.longValue());
+                counts.imported++;
+            }
+        }
+        batch.clear();
+    }
+
+    private static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted during catalog transfer");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private static String artifactId(Document record) {
+        Document artifact = record.get("artifact", Document.class);
+        return artifact == null ? null : artifact.getString("_id");
+    }
+
+    // Reads the rest of the current zip entry, null when it is larger than maxBytes
+    private static byte[] readEntry(InputStream in, int maxBytes) throws IOException {
+        byte[] data = in.readNBytes(maxBytes + 1);
+        return data.length > maxBytes ? null : data;
+    }
+
+    private static String sha256(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private record ExportEntry(Document artifact, byte[] blob, String sha256) {
+    }
+
+    private static class ImportCounts {
+        long imported;
+        long skipped;
+        long failed;
+    }
+}
@@ -0,0 +1,188 @@
+package com.ben.file.cabinet.service.impl;
+
+import com.ben.file.cabinet.service.HotArtifactService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Same forward decay as the trending scores: every access adds exp(lambda * (t - epoch)) and the
+ * scheduled snapshot moves the epoch to "now". The hottest ids are written to a local file,
+ * replaced atomically so a crash mid-write never leaves a truncated snapshot for the next start.
+ */
+@Service
+public class HotArtifactServiceImpl implements HotArtifactService {
+
+    private static final Logger log = LoggerFactory.getLogger(HotArtifactServiceImpl.class);
+
+    @Value("${file.cabinet.warmup.half-life-minutes:60}")
+    private double halfLifeMinutes;
+
+    // A like says more about what the gallery will show next than a single view does
+    @Value("${file.cabinet.warmup.like-weight:5}")
+    private double likeWeight;
+
+    @Value("${file.cabinet.warmup.size:200}")
+    private int snapshotSize;
+
+    @Value("${file.cabinet.warmup.min-score:0.01}")
+    private double minScore;
+
+    @Value("${file.cabinet.warmup.snapshot-path:data/hot-artifacts.txt}")
+    private String snapshotFile;
+
+    private Path snapshotPath;
+
+    private final Map<String, Double> scores = new ConcurrentHashMap<>();
+    private volatile long epochMillis = System.currentTimeMillis();
+
+    @PostConstruct
+    public void start() {
+        snapshotPath = Path.of(snapshotFile).toAbsolutePath();
+    }
+
+    @Override
+    public void recordView(String artifactId) {
+        record(artifactId, 1);
+    }
+
+    @Override
+    public void recordLike(String artifactId) {
+        record(artifactId, likeWeight);
+    }
+
+    @Override
+    public void remove(String artifactId) {
+        scores.remove(artifactId);
+    }
+
+    @Override
+    public double getScore(String artifactId) {
+        Double score = scores.get(artifactId);
+        return score == null ? 0 : score * Math.exp(-decayRate() * (System.currentTimeMillis() - epochMillis));
+    }
+
+    @Override
+    public List<String> getHotIds(int limit) {
+        // Min-heap of the best `limit` scores seen so far
+        PriorityQueue<Map.Entry<String, Double>> top = new PriorityQueue<>(Map.Entry.<String, Double>comparingByValue());
+        for (Map.Entry<String, Double> entry : scores.entrySet()) {
+            top.offer(Map.entry(entry.getKey(), entry.getValue()));
+            if (top.size() > limit) {
+                top.poll();
+            }
+        }
+
+        List<String> ids = new ArrayList<>(top.size());
+        while (!top.isEmpty()) {
+            ids.add(top.poll().getKey());
+        }
+        Collections.reverse(ids);
+        return ids;
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${file.cabinet.warmup.snapshot-interval-ms:300000}",
+            initialDelayString = "${file.cabinet.warmup.snapshot-interval-ms:300000}")
+    public synchronized void saveSnapshot() {
+        rescale();
+        List<String> ids = getHotIds(snapshotSize);
+        if (ids.isEmpty()) {
+            return;
+        }
+
+        List<String> lines = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            Double score = scores.get(id);
+            if (score != null) {
+                lines.add(id + "\t" + score);
+            }
+        }
+
+        try {
+            Path directory = snapshotPath.getParent();
+            Files.createDirectories(directory);
+            Path temp = Files.createTempFile(directory, snapshotPath.getFileName().toString(), ".tmp");
+            try {
+                Files.write(temp, lines, StandardCharsets.UTF_8);
+                try {
+                    Files.move(temp, snapshotPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temp, snapshotPath, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            log.debug("Saved {} hot artifact ids to {}", lines.size(), snapshotPath);
+        } catch (IOException e) {
+            log.warn("Could not save the hot artifact snapshot to {}", snapshotPath, e);
+        }
+    }
+
+    @Override
+    public List<String> loadSnapshot() {
+        if (!Files.isRegularFile(snapshotPath)) {
+            return List.of();
+        }
+
+        List<String> ids = new ArrayList<>();
+        try {
+            for (String line : Files.readAllLines(snapshotPath, StandardCharsets.UTF_8)) {
+                String[] parts = line.split("\t");
+                if (parts.length != 2) {
+                    continue;
+                }
+                try {
+                    // Scores were saved relative to their own epoch, which is as good as ours for ranking
+                    scores.merge(parts[0], Double.parseDouble(parts[1]), Double::sum);
+                    ids.add(parts[0]);
+                } catch (NumberFormatException e) {
+                    // Skip the line, the rest of the snapshot is still usable
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Could not read the hot artifact snapshot from {}", snapshotPath, e);
+        }
+        return ids;
+    }
+
+    // Saves the latest ranking on a graceful shutdown, which is what the next start preloads
+    @PreDestroy
+    public void stop() {
+        saveSnapshot();
+    }
+
+    private void record(String artifactId, double weight) {
+        scores.merge(artifactId, weight * Math.exp(decayRate() * (System.currentTimeMillis() - epochMillis)), Double::sum);
+    }
+
+    private void rescale() {
+        long now = System.currentTimeMillis();
+        double factor = Math.exp(-decayRate() * (now - epochMillis));
+        epochMillis = now;
+        for (String artifactId : scores.keySet()) {
+            scores.computeIfPresent(artifactId, (id, value) -> value * factor < minScore ? null : value * factor);
+        }
+    }
+
+    private double decayRate() {
+        return Math.log(2) / (halfLifeMinutes * 60_000);
+    }
+}
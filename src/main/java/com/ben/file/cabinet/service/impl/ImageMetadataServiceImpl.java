@@ -0,0 +1,242 @@
+package com.ben.file.cabinet.service.impl;
+
+import com.ben.file.cabinet.model.Artifact;
+import com.ben.file.cabinet.service.ImageMetadataService;
+import com.mongodb.MongoException;
+import com.mongodb.client.gridfs.GridFSBucket;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOException;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+@Service
+public class ImageMetadataServiceImpl implements ImageMetadataService {
+
+    private static final Logger log = LoggerFactory.getLogger(ImageMetadataServiceImpl.class);
+
+    private static final String CHECKPOINT_COLLECTION = "job_checkpoint";
+    private static final String BACKFILL_JOB = "artifact-metadata-backfill";
+
+    // A JPEG APP1/EXIF segment is at most 64KB and comes right after the start of image marker
+    private static final int HEADER_BYTES = 64 * 1024;
+    private static final int PREVIEW_SIZE = 32;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private GridFSBucket gridFSBucket;
+
+    @Autowired
+    private ArtifactCache artifactCache;
+
+    @Value("${file.cabinet.metadata.threads:2}")
+    private int threads;
+
+    @Value("${file.cabinet.metadata.queue-capacity:1000}")
+    private int queueCapacity;
+
+    @Value("${file.cabinet.metadata.backfill-batch-size:100}")
+    private int backfillBatchSize;
+
+    @Value("${file.cabinet.metadata.backfill-parallelism:4}")
+    private int backfillParallelism;
+
+    private ThreadPoolExecutor uploadExecutor;
+
+    private final AtomicBoolean backfillRunning = new AtomicBoolean();
+    private final AtomicLong backfillProcessed = new AtomicLong();
+    private final AtomicLong backfillFailed = new AtomicLong();
+    private volatile String backfillLastId;
+
+    @PostConstruct
+    public void start() {
+        // When the queue is full the upload is skipped here and left for the backfill
+        uploadExecutor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                new CustomizableThreadFactory("image-metadata-"),
+                new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    @PreDestroy
+    public void stop() {
+        uploadExecutor.shutdownNow();
+    }
+
+    @Override
+    public void extractAsync(String artifactId) {
+        uploadExecutor.execute(() -> extract(artifactId));
+    }
+
+    @Override
+    public boolean extract(String artifactId) {
+        Artifact artifact = mongoTemplate.findById(artifactId, Artifact.class);
+        if (artifact == null || artifact.isDeleted() || artifact.getGridFsId() == null) {
+            return false;
+        }
+
+        // Images that cannot be decoded are still marked so the backfill does not retry them forever.
+        // A failure to read the file (driver, network) leaves the flag unset and the backfill retries it.
+        Update update = new Update().set("metadataExtracted", true);
+        boolean extracted = false;
+
+        try (InputStream in = new BufferedInputStream(gridFSBucket.openDownloadStream(artifact.getGridFsId()), HEADER_BYTES)) {
+            in.mark(HEADER_BYTES);
+            byte[] header = in.readNBytes(HEADER_BYTES);
+            in.reset();
+            int orientation = ImageUtils.readExifOrientation(header, header.length);
+
+            // Size comes from the image header; the pixels are only decoded subsampled for the preview
+            ImageUtils.DecodedImage decoded = ImageUtils.readDecoded(in, PREVIEW_SIZE);
+            if (decoded != null) {
+                boolean swapped = orientation >= 5;
+                BufferedImage preview = ImageUtils.orient(shrink(decoded.image()), orientation);
+                boolean portrait = preview.getHeight() > preview.getWidth();
+
+                update.set("width", swapped ? decoded.height() : decoded.width())
+                        .set("height", swapped ? decoded.width() : decoded.height())
+                        .set("orientation", orientation)
+                        .set("placeholder", BlurHash.encode(preview, portrait ? 3 : 4, portrait ? 4 : 3));
+                extracted = true;
+            }
+        } catch (IIOException e) {
+            // ImageIO also wraps failures of the stream underneath it; only a decoding error is final
+            if (e.getCause() != null && !(e.getCause() instanceof IIOException)) {
+                log.warn("Could not read artifact {} for image metadata, leaving it for a retry", artifactId, e);
+                return false;
+            }
+            log.warn("Artifact {} is not a decodable image", artifactId, e);
+        } catch (IOException | MongoException e) {
+            log.warn("Could not read artifact {} for image metadata, leaving it for a retry", artifactId, e);
+            return false;
+        } catch (RuntimeException e) {
+            // Thrown by a decoder choking on malformed data, which a retry will not fix
+            log.warn("Artifact {} is not a decodable image", artifactId, e);
+        }
+
+        mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(artifactId)), update, Artifact.class);
+        artifactCache.evict(artifactId);
+        return extracted;
+    }
+
+    @Override
+    public boolean startBackfill() {
+        if (!backfillRunning.compareAndSet(false, true)) {
+            return false;
+        }
+        Thread thread = new Thread(this::runBackfill, "metadata-backfill");
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    @Override
+    public BackfillStatus getBackfillStatus() {
+        return new BackfillStatus(backfillRunning.get(), backfillProcessed.get(), backfillFailed.get(), backfillLastId);
+    }
+
+    private void runBackfill() {
+        ExecutorService workers = Executors.newFixedThreadPool(backfillParallelism,
+                new CustomizableThreadFactory("metadata-backfill-"));
+        try {
+            backfillProcessed.set(0);
+            backfillFailed.set(0);
+            backfillLastId = loadCheckpoint();
+            log.info("Image metadata backfill starting after id {}", backfillLastId);
+
+            while (!Thread.currentThread().isInterrupted()) {
+                Query query = new Query(Criteria.where("metadataExtracted").ne(true).and("deletedDate").is(null))
+                        .with(Sort.by("_id"))
+                        .limit(backfillBatchSize);
+                if (backfillLastId != null) {
+                    query.addCriteria(Criteria.where("_id").gt(backfillLastId));
+                }
+                query.fields().include("_id");
+
+                List<String> ids = mongoTemplate.find(query, Artifact.class).stream()
+                        .map(Artifact::getId)
+                        .collect(Collectors.toList());
+                if (ids.isEmpty()) {
+                    clearCheckpoint();
+                    break;
+                }
+
+                List<Callable<Boolean>> tasks = ids.stream()
+                        .map(id -> (Callable<Boolean>) () -> extract(id))
+                        .collect(Collectors.toList());
+                for (Future<Boolean> result : workers.invokeAll(tasks)) {
+                    if (result.get()) {
+                        backfillProcessed.incrementAndGet();
+                    } else {
+                        backfillFailed.incrementAndGet();
+                    }
+                }
+
+                backfillLastId = ids.get(ids.size() - 1);
+                saveCheckpoint(backfillLastId);
+            }
+            log.info("Image metadata backfill finished: {} processed, {} failed", backfillProcessed.get(), backfillFailed.get());
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | RuntimeException e) {
+            log.warn("Image metadata backfill stopped at id {}", backfillLastId, e);
+        } finally {
+            workers.shutdownNow();
+            backfillRunning.set(false);
+        }
+    }
+
+    private String loadCheckpoint() {
+        Document checkpoint = mongoTemplate.findById(BACKFILL_JOB, Document.class, CHECKPOINT_COLLECTION);
+        return checkpoint == null ? null : checkpoint.getString("lastId");
+    }
+
+    private void saveCheckpoint(String lastId) {
+        Update update = Update.update("lastId", lastId).set("updatedDate", new Date());
+        mongoTemplate.upsert(Query.query(Criteria.where("_id").is(BACKFILL_JOB)), update, CHECKPOINT_COLLECTION);
+    }
+
+    private void clearCheckpoint() {
+        mongoTemplate.remove(Query.query(Criteria.where("_id").is(BACKFILL_JOB)), CHECKPOINT_COLLECTION);
+    }
+
+    private static BufferedImage shrink(BufferedImage image) {
+        double scale = (double) PREVIEW_SIZE / Math.max(image.getWidth(), image.getHeight());
+        if (scale >= 1) {
+            return image;
+        }
+        return ImageUtils.resize(image,
+                Math.max(1, (int) Math.round(image.getWidth() * scale)),
+                Math.max(1, (int) Math.round(image.getHeight() * scale)));
+    }
+}
@@ -0,0 +1,190 @@
+package com.ben.file.cabinet.service.impl;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+
+final class ImageUtils {
+
+    private ImageUtils() {
+    }
+
+    // Decodes with source subsampling so the short side is still at least minSide,
+    // instead of decoding a full resolution photo just to shrink it. Returns null if unreadable.
+    static BufferedImage readSubsampled(InputStream in, int minSide) throws IOException {
+        DecodedImage decoded = readDecoded(in, minSide);
+        return decoded == null ? null : decoded.image();
+    }
+
+    // Same as readSubsampled, also returning the full size read from the image header
+    static DecodedImage readDecoded(InputStream in, int minSide) throws IOException {
+        try (ImageInputStream imageInput = ImageIO.createImageInputStream(in)) {
+            if (imageInput == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(imageInput);
+            if (!readers.hasNext()) {
+                return null;
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(imageInput, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                int step = Math.max(1, Math.min(width, height) / minSide);
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(step, step, 0, 0);
+                return new DecodedImage(width, height, reader.read(0, param));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    // Center-crops to a square and scales down to size x size
+    static BufferedImage squareThumbnail(BufferedImage source, int size) {
+        int side = Math.min(source.getWidth(), source.getHeight());
+        BufferedImage current = source.getSubimage(
+                (source.getWidth() - side) / 2, (source.getHeight() - side) / 2, side, side);
+
+        // Halve step by step, a single bilinear pass from a large image drops most of the pixels
+        int currentSize = side;
+        while (currentSize / 2 >= size) {
+            currentSize /= 2;
+            current = resize(current, currentSize, currentSize);
+        }
+        return resize(current, size, size);
+    }
+
+    static BufferedImage resize(BufferedImage source, int width, int height) {
+        BufferedImage resized = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = resized.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return resized;
+    }
+
+    // EXIF orientation (1-8) from the first bytes of a JPEG, 1 when absent or not a JPEG
+    static int readExifOrientation(byte[] data, int length) {
+        if (length < 4 || (data[0] & 0xFF) != 0xFF || (data[1] & 0xFF) != 0xD8) {
+            return 1;
+        }
+
+        int pos = 2;
+        while (pos + 4 <= length) {
+            if ((data[pos] & 0xFF) != 0xFF) {
+                return 1;
+            }
+            int marker = data[pos + 1] & 0xFF;
+            if (marker == 0xFF) {
+                pos++; // fill byte
+                continue;
+            }
+            if (marker == 0xDA || marker == 0xD9) {
+                return 1; // start of scan / end of image, no EXIF before the pixel data
+            }
+
+            int segmentLength = readUnsignedShort(data, pos + 2, false);
+            int segmentStart = pos + 4;
+            if (marker == 0xE1 && segmentStart + 6 <= length
+                    && data[segmentStart] == 'E' && data[segmentStart + 1] == 'x'
+                    && data[segmentStart + 2] == 'i' && data[segmentStart + 3] == 'f') {
+                return readTiffOrientation(data, segmentStart + 6, Math.min(length, pos + 2 + segmentLength));
+            }
+            pos += 2 + segmentLength;
+        }
+        return 1;
+    }
+
+    // Applies an EXIF orientation so the image is upright as it would be displayed
+    static BufferedImage orient(BufferedImage image, int orientation) {
+        if (orientation < 2 || orientation > 8) {
+            return image;
+        }
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+        boolean swapped = orientation >= 5;
+        // Maps stored pixel coordinates to displayed ones: (m00, m10, m01, m11, m02, m12)
+        AffineTransform transform = switch (orientation) {
+            case 2 -> new AffineTransform(-1, 0, 0, 1, width, 0);       // mirror horizontal
+            case 3 -> new AffineTransform(-1, 0, 0, -1, width, height); // rotate 180
+            case 4 -> new AffineTransform(1, 0, 0, -1, 0, height);      // mirror vertical
+            case 5 -> new AffineTransform(0, 1, 1, 0, 0, 0);            // transpose
+            case 6 -> new AffineTransform(0, 1, -1, 0, height, 0);      // rotate 90 clockwise
+            case 7 -> new AffineTransform(0, -1, -1, 0, height, width); // transverse
+            default -> new AffineTransform(0, -1, 1, 0, 0, width);      // 8: rotate 90 counter-clockwise
+        };
+
+        BufferedImage oriented = new BufferedImage(swapped ? height : width, swapped ? width : height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = oriented.createGraphics();
+        try {
+            graphics.drawImage(image, transform, null);
+        } finally {
+            graphics.dispose();
+        }
+        return oriented;
+    }
+
+    private static int readTiffOrientation(byte[] data, int start, int end) {
+        if (start + 8 > end) {
+            return 1;
+        }
+        boolean littleEndian;
+        if (data[start] == 'I' && data[start + 1] == 'I') {
+            littleEndian = true;
+        } else if (data[start] == 'M' && data[start + 1] == 'M') {
+            littleEndian = false;
+        } else {
+            return 1;
+        }
+
+        long ifdOffset = readUnsignedInt(data, start + 4, littleEndian);
+        if (ifdOffset < 8 || start + ifdOffset + 2 > end) {
+            return 1;
+        }
+        int ifd = start + (int) ifdOffset;
+        int entries = readUnsignedShort(data, ifd, littleEndian);
+        for (int i = 0; i < entries; i++) {
+            int entry = ifd + 2 + i * 12;
+            if (entry + 12 > end) {
+                break;
+            }
+            if (readUnsignedShort(data, entry, littleEndian) == 0x0112) {
+                int orientation = readUnsignedShort(data, entry + 8, littleEndian);
+                return orientation >= 1 && orientation <= 8 ? orientation : 1;
+            }
+        }
+        return 1;
+    }
+
+    private static int readUnsignedShort(byte[] data, int pos, boolean littleEndian) {
+        int first = data[pos] & 0xFF;
+        int second = data[pos + 1] & 0xFF;
+        return littleEndian ? (second << 8) | first : (first << 8) | second;
+    }
+
+    private static long readUnsignedInt(byte[] data, int pos, boolean littleEndian) {
+        long high = readUnsignedShort(data, littleEndian ? pos + 2 : pos, littleEndian);
+        long low = readUnsignedShort(data, littleEndian ? pos : pos + 2, littleEndian);
+        return (high << 16) | low;
+    }
+
+    record DecodedImage(int width, int height, BufferedImage image) {
+    }
+}
@@ -0,0 +1,264 @@
+package com.ben.file.cabinet.service.impl;
+
+import com.ben.file.cabinet.service.LeaderboardService;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/*
+ * Keeps the top of the likes feed in memory, ordered by likeCount desc then id asc
+ * (the same order as ArtifactRepository.findAllOrderByLikes).
+ *
+ * Invariant: every artifact that is not in the set ranks below every artifact in the set,
+ * so any prefix of the set is exactly the prefix of the database ordering. When an entry
+ * drops to the bottom we can no longer prove that, so it is evicted and the set shrinks
+ * until the next refill.
+ *
+ * Pages are read under a read lock and changes are made under the write lock, so a reader
+ * never sees an entry half way through moving. A rebuild queries Mongo without holding the lock,
+ * then installs the new set in one step and replays the changes that arrived meanwhile.
+ *
+ * Like counts are written without any lock held across the Mongo round trip, so two counts for
+ * the same artifact can arrive in either order. Each carries the artifact's likeVersion and only
+ * a newer one is applied; anything that still drifts is corrected by the periodic rebuild.
+ */
+@Service
+public class LeaderboardServiceImpl implements LeaderboardService {
+
+    private static final Logger log = LoggerFactory.getLogger(LeaderboardServiceImpl.class);
+
+    private static final Comparator<Entry> RANKING = Comparator
+            .<Entry>comparingInt(Entry::likeCount).reversed()
+            .thenComparing(Entry::id);
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Value("${file.cabinet.leaderboard.capacity:1000}")
+    private int capacity;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Guarded by lock
+    private NavigableSet<Entry> entries = new TreeSet<>(RANKING);
+    // Mirrors the set by id
+    private Map<String, Integer> counts = new HashMap<>();
+    // Latest likeVersion applied per artifact, for the loaded entries and whatever changed since
+    private Map<String, Long> versions = new HashMap<>();
+    // True when the set holds every artifact in the collection
+    private boolean complete;
+    // Changes made while a rebuild is reading from Mongo, null when no rebuild is running
+    private List<Change> pending;
+
+    @Override
+    public List<String> getTopLikedIds(int page, int size) {
+        lock.readLock().lock();
+        try {
+            long offset = (long) page * size;
+            if (!complete && offset + size > counts.size()) {
+                return null;
+            }
+
+            List<String> ids = new ArrayList<>(size);
+            Iterator<Entry> iterator = entries.iterator();
+            for (long skipped = 0; skipped < offset && iterator.hasNext(); skipped++) {
+                iterator.next();
+            }
+            while (ids.size() < size && iterator.hasNext()) {
+                ids.add(iterator.next().id());
+            }
+            return ids;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void update(String artifactId, int likeCount, long version) {
+        lock.writeLock().lock();
+        try {
+            if (pending != null) {
+                pending.add(new Change(artifactId, likeCount, version));
+            }
+            apply(artifactId, likeCount, version);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void remove(String artifactId) {
+        lock.writeLock().lock();
+        try {
+            if (pending != null) {
+                pending.add(new Change(artifactId, null, Long.MAX_VALUE));
+            }
+            discard(artifactId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Synchronized only against other rebuilds; readers and updates keep going during the query
+    @Override
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void rebuild() {
+        Query query = new Query(Criteria.where("deletedDate").is(null))
+                .with(Sort.by(Sort.Order.desc("likeCount"), Sort.Order.asc("_id")))
+                .limit(capacity + 1);
+        query.fields().include("likeCount").include("likeVersion");
+
+        setRecording(true);
+        List<Document> documents;
+        try {
+            documents = mongoTemplate.find(query, Document.class, "artifact");
+        } catch (RuntimeException e) {
+            setRecording(false);
+            throw e;
+        }
+        load(documents);
+    }
+
+    // Replaces the contents with the head of the likes ordering, up to capacity + 1 documents,
+    // then replays whatever changed since the documents were read
+    void load(List<Document> documents) {
+        NavigableSet<Entry> loadedEntries = new TreeSet<>(RANKING);
+        Map<String, Integer> loadedCounts = new HashMap<>();
+        Map<String, Long> loadedVersions = new HashMap<>();
+        for (Document document : documents.subList(0, Math.min(capacity, documents.size()))) {
+            Entry entry = new Entry(String.valueOf(document.get("_id")), document.getInteger("likeCount", 0));
+            Number version = document.get("likeVersion", Number.class);
+            loadedEntries.add(entry);
+            loadedCounts.put(entry.id(), entry.likeCount());
+            loadedVersions.put(entry.id(), version == null ? 0 : version.longValue());
+        }
+
+        lock.writeLock().lock();
+        try {
+            entries = loadedEntries;
+            counts = loadedCounts;
+            versions = loadedVersions;
+            complete = documents.size() <= capacity;
+
+            List<Change> changes = pending;
+            pending = null;
+            if (changes != null) {
+                for (Change change : changes) {
+                    if (change.likeCount() == null) {
+                        discard(change.artifactId());
+                    } else {
+                        apply(change.artifactId(), change.likeCount(), change.version());
+                    }
+                }
+            }
+            log.debug("Rebuilt likes leaderboard with {} entries (complete={})", counts.size(), complete);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Evictions shrink the set over time; top it back up once it falls below half capacity
+    @Scheduled(fixedDelayString = "${file.cabinet.leaderboard.refill-interval-ms:60000}")
+    public void refill() {
+        boolean depleted;
+        lock.readLock().lock();
+        try {
+            depleted = !complete && counts.size() < capacity / 2;
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (depleted) {
+            rebuild();
+        }
+    }
+
+    // Counts written by anything other than this process (another instance, a manual fix in the
+    // shell) never reach update(), so reload from the likeCount index now and then whatever the size
+    @Scheduled(fixedDelayString = "${file.cabinet.leaderboard.rebuild-interval-ms:600000}",
+            initialDelayString = "${file.cabinet.leaderboard.rebuild-interval-ms:600000}")
+    public void reconcile() {
+        rebuild();
+    }
+
+    private void setRecording(boolean recording) {
+        lock.writeLock().lock();
+        try {
+            pending = recording ? new ArrayList<>() : null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Caller holds the write lock
+    private void apply(String artifactId, int likeCount, long version) {
+        Long applied = versions.get(artifactId);
+        if (applied != null && version <= applied) {
+            return;
+        }
+        versions.put(artifactId, version);
+
+        Entry updated = new Entry(artifactId, likeCount);
+        Integer previous = counts.remove(artifactId);
+
+        if (previous != null) {
+            entries.remove(new Entry(artifactId, previous));
+            // Moving up keeps the invariant; moving down only does if something else still ranks below it
+            if (complete || likeCount >= previous || ranksAboveLast(updated)) {
+                insert(updated);
+            }
+        } else if (complete || ranksAboveLast(updated)) {
+            insert(updated);
+        }
+    }
+
+    // Caller holds the write lock. Pins the version so a like that raced the delete cannot bring it back
+    private void discard(String artifactId) {
+        versions.put(artifactId, Long.MAX_VALUE);
+        Integer previous = counts.remove(artifactId);
+        if (previous != null) {
+            entries.remove(new Entry(artifactId, previous));
+        }
+    }
+
+    private boolean ranksAboveLast(Entry entry) {
+        return !entries.isEmpty() && RANKING.compare(entry, entries.last()) < 0;
+    }
+
+    private void insert(Entry entry) {
+        entries.add(entry);
+        counts.put(entry.id(), entry.likeCount());
+        if (counts.size() > capacity) {
+            Entry evicted = entries.pollLast();
+            counts.remove(evicted.id());
+            complete = false;
+        }
+    }
+
+    private record Entry(String id, int likeCount) {
+    }
+
+    // A like count change, or a removal when likeCount is null
+    private record Change(String artifactId, Integer likeCount, long version) {
+    }
+}
@@ -0,0 +1,182 @@
+package com.ben.file.cabinet.service.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Reads the source on a background thread up to `depth` blocks ahead of the consumer, so the
+ * next GridFS chunks are already on their way from Mongo while the current one is written to
+ * the client. The background thread owns the source and closes it when it stops.
+ *
+ * The reader always marks itself done when it stops, and the consumer checks that flag while
+ * waiting, so a reader that gave up on a stalled consumer surfaces as an IOException once the
+ * consumer catches up instead of leaving it blocked forever.
+ */
+class PrefetchingInputStream extends InputStream {
+
+    private static final byte[] END = new byte[0];
+    private static final long POLL_TIMEOUT_MS = 100;
+    // A consumer that stops reading without closing must not pin a prefetch thread forever
+    private static final long STALL_TIMEOUT_MS = 60_000;
+
+    private final InputStream source;
+    private final int blockSize;
+    private final BlockingQueue<byte[]> blocks;
+    private final long stallTimeoutMillis;
+
+    private volatile boolean closed;
+    private volatile boolean readerDone;
+    private volatile IOException failure;
+
+    private byte[] current;
+    private int position;
+    private boolean finished;
+
+    // Throws RejectedExecutionException when the executor has no thread to spare
+    PrefetchingInputStream(InputStream source, int blockSize, int depth, Executor executor) {
+        this(source, blockSize, depth, executor, STALL_TIMEOUT_MS);
+    }
+
+    PrefetchingInputStream(InputStream source, int blockSize, int depth, Executor executor, long stallTimeoutMillis) {
+        this.source = source;
+        this.blockSize = blockSize;
+        this.blocks = new ArrayBlockingQueue<>(depth);
+        this.stallTimeoutMillis = stallTimeoutMillis;
+        executor.execute(this::readAhead);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return current[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int count = Math.min(length, current.length - position);
+        System.arraycopy(current, position, buffer, offset, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return current == null ? 0 : current.length - position;
+    }
+
+    @Override
+    public void close() {
+        // The reader notices on its next hand-off and closes the source itself
+        closed = true;
+        current = null;
+        blocks.clear();
+    }
+
+    private boolean fill() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (current != null && position < current.length) {
+            return true;
+        }
+        if (finished) {
+            return false;
+        }
+
+        current = nextBlock();
+        position = 0;
+
+        if (current == END) {
+            finished = true;
+            current = null;
+            if (failure != null) {
+                throw failure;
+            }
+            return false;
+        }
+        return true;
+    }
+
+    private byte[] nextBlock() throws IOException {
+        try {
+            while (true) {
+                byte[] block = blocks.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                if (block != null) {
+                    return block;
+                }
+                if (readerDone) {
+                    // Everything the reader handed off is visible once it is done; an empty queue means it ended
+                    block = blocks.poll();
+                    return block != null ? block : END;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for prefetched data");
+        }
+    }
+
+    private void readAhead() {
+        boolean stalled = false;
+        try {
+            while (!closed) {
+                byte[] block = source.readNBytes(blockSize);
+                if (block.length > 0 && !handOff(block)) {
+                    stalled = !closed;
+                    break;
+                }
+                if (block.length < blockSize) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            failure = e;
+        } catch (RuntimeException e) {
+            // The Mongo driver reports read failures as unchecked exceptions
+            failure = new IOException("Error reading from GridFS", e);
+        } finally {
+            try {
+                source.close();
+            } catch (IOException ignored) {
+                // Nothing more to read from it either way
+            }
+        }
+
+        if (stalled) {
+            failure = new IOException("Consumer stalled for more than " + stallTimeoutMillis + " ms, read-ahead stopped");
+        }
+        // Set before END is offered, so a consumer that finds the queue empty afterwards knows to stop waiting
+        readerDone = true;
+        if (!stalled) {
+            handOff(END);
+        }
+    }
+
+    // Blocks while the consumer is behind, returns false once the consumer has closed or abandoned the stream
+    private boolean handOff(byte[] block) {
+        long deadline = System.currentTimeMillis() + stallTimeoutMillis;
+        try {
+            while (!closed && System.currentTimeMillis() < deadline) {
+                if (blocks.offer(block, POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+}
@@ -2,8 +2,10 @@ package com.ben.file.cabinet.service.impl;
 
 import com.ben.file.cabinet.model.Profile;
 import com.ben.file.cabinet.repository.ProfileRepository;
+import com.ben.file.cabinet.service.ArtifactService;
 import com.ben.file.cabinet.service.ProfileService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
@@ -12,21 +14,31 @@ import org.springframework.data.mongodb.core.FindAndModifyOptions;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.util.Collection;
+import java.util.List;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 @Service
 public class ProfileServiceImpl implements ProfileService {
 
+    private static final int STREAM_BATCH_SIZE = 500;
+
     @Autowired
     private MongoTemplate mongoTemplate;
 
     @Autowired
     private ProfileRepository profileRepository;
 
+    @Autowired
+    private ArtifactService artifactService;
+
     @Override
-    public Collection<Profile> get(){
-        return profileRepository.findAll();
+    public List<Profile> get(String cursor, int limit) {
+        Query query = new Query().with(Sort.by("_id")).limit(limit);
+        if (cursor != null) {
+            query.addCriteria(Criteria.where("_id").gt(cursor));
+        }
+        return mongoTemplate.find(query, Profile.class);
     }
 
     @Override
@@ -34,6 +46,11 @@ public class ProfileServiceImpl implements ProfileService {
         return profileRepository.findById(id).orElse(null);
     }
 
+    @Override
+    public List<Profile> get(List<String> ids) {
+        return profileRepository.findAllById(ids);
+    }
+
     @Override
     public Profile save(String displayName, String email) {
 
@@ -72,7 +89,15 @@ public class ProfileServiceImpl implements ProfileService {
         Profile profile = profileRepository.findById(id).orElse(null);
         if(profile != null){
             profileRepository.deleteById(id);
+            // Likes are cleaned up here; the avatar blob is now unreferenced and reclaimed by the storage GC
+            artifactService.removeLikesByUser(id);
         }
         return profile;
     }
+
+    @Override
+    public Stream<Profile> stream() {
+        Query query = new Query().with(Sort.by("_id")).cursorBatchSize(STREAM_BATCH_SIZE);
+        return mongoTemplate.stream(query, Profile.class);
+    }
 }
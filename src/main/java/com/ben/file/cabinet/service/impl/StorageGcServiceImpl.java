@@ -0,0 +1,257 @@
+package com.ben.file.cabinet.service.impl;
+
+import com.ben.file.cabinet.model.Artifact;
+import com.ben.file.cabinet.model.Profile;
+import com.ben.file.cabinet.service.StorageGcService;
+import com.mongodb.MongoGridFSException;
+import com.mongodb.client.gridfs.GridFSBucket;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/*
+ * Reclaims GridFS storage in small batches with a pause in between, so large cleanups
+ * don't compete with live traffic for the Mongo connection pool.
+ *
+ * Files and chunks younger than the grace period are never touched: an upload writes its
+ * chunks before its files document, and the artifact document only after both.
+ */
+@Service
+public class StorageGcServiceImpl implements StorageGcService {
+
+    private static final Logger log = LoggerFactory.getLogger(StorageGcServiceImpl.class);
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private GridFSBucket gridFSBucket;
+
+    @Autowired
+    private BlobCache blobCache;
+
+    @Value("${file.cabinet.gridfs.bucket-name}")
+    private String bucketName;
+
+    @Value("${file.cabinet.gc.batch-size:200}")
+    private int batchSize;
+
+    @Value("${file.cabinet.gc.batch-pause-ms:200}")
+    private long batchPauseMillis;
+
+    @Value("${file.cabinet.gc.orphan-grace-minutes:60}")
+    private long orphanGraceMinutes;
+
+    @Scheduled(fixedDelayString = "${file.cabinet.gc.purge-interval-ms:30000}")
+    public void purgeSchedule() {
+        try {
+            int purged = purgeDeletedArtifacts();
+            if (purged > 0) {
+                log.info("Purged {} deleted artifacts", purged);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Purging deleted artifacts failed", e);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${file.cabinet.gc.orphan-interval-ms:21600000}",
+            initialDelayString = "${file.cabinet.gc.orphan-initial-delay-ms:300000}")
+    public void orphanSchedule() {
+        try {
+            int files = collectOrphanFiles();
+            int chunkFiles = collectOrphanChunks();
+            log.info("Storage GC removed {} orphaned files and the chunks of {} missing files", files, chunkFiles);
+        } catch (RuntimeException e) {
+            log.warn("Storage GC failed", e);
+        }
+    }
+
+    @Override
+    public int purgeDeletedArtifacts() {
+        int purged = 0;
+        while (!Thread.currentThread().isInterrupted()) {
+            Query query = new Query(Criteria.where("deletedDate").lte(LocalDateTime.now()))
+                    .with(Sort.by("deletedDate"))
+                    .limit(batchSize);
+            query.fields().include("gridFsId");
+
+            List<Artifact> batch = mongoTemplate.find(query, Artifact.class);
+            if (batch.isEmpty()) {
+                break;
+            }
+
+            for (Artifact artifact : batch) {
+                if (artifact.getGridFsId() != null) {
+                    deleteFile(artifact.getGridFsId());
+                }
+            }
+            List<String> ids = batch.stream().map(Artifact::getId).collect(Collectors.toList());
+            mongoTemplate.remove(new Query(Criteria.where("_id").in(ids)), Artifact.class);
+
+            purged += batch.size();
+            pause();
+        }
+        return purged;
+    }
+
+    @Override
+    public int collectOrphanFiles() {
+        String filesCollection = bucketName + ".files";
+        Date cutoff = Date.from(Instant.now().minusSeconds(orphanGraceMinutes * 60));
+
+        int removed = 0;
+        Object lastId = null;
+        while (!Thread.currentThread().isInterrupted()) {
+            Query query = new Query().with(Sort.by("_id")).limit(batchSize);
+            if (lastId != null) {
+                query.addCriteria(Criteria.where("_id").gt(lastId));
+            }
+            query.fields().include("uploadDate").include("metadata.avatarSource");
+
+            List<Document> files = mongoTemplate.find(query, Document.class, filesCollection);
+            if (files.isEmpty()) {
+                break;
+            }
+            lastId = files.get(files.size() - 1).get("_id");
+
+            Set<ObjectId> candidates = new HashSet<>();
+            Map<ObjectId, String> avatarSources = new HashMap<>();
+            for (Document file : files) {
+                Date uploadDate = file.getDate("uploadDate");
+                if (file.get("_id") instanceof ObjectId id && uploadDate != null && uploadDate.before(cutoff)) {
+                    candidates.add(id);
+                    Document metadata = file.get("metadata", Document.class);
+                    if (metadata != null && metadata.getString("avatarSource") != null) {
+                        avatarSources.put(id, metadata.getString("avatarSource"));
+                    }
+                }
+            }
+
+            candidates.removeAll(referencedFileIds(candidates, avatarSources));
+            for (ObjectId id : candidates) {
+                deleteFile(id);
+            }
+            removed += candidates.size();
+            pause();
+        }
+        return removed;
+    }
+
+    @Override
+    public int collectOrphanChunks() {
+        String filesCollection = bucketName + ".files";
+        String chunksCollection = bucketName + ".chunks";
+        Date cutoff = Date.from(Instant.now().minusSeconds(orphanGraceMinutes * 60));
+
+        int removed = 0;
+        Object lastFileId = null;
+        boolean exhausted = false;
+        while (!exhausted && !Thread.currentThread().isInterrupted()) {
+            // Walk the distinct files_id values through the { files_id, n } index, one seek per file
+            List<Object> fileIds = new ArrayList<>();
+            while (fileIds.size() < batchSize) {
+                Query query = new Query().with(Sort.by("files_id"));
+                if (lastFileId != null) {
+                    query.addCriteria(Criteria.where("files_id").gt(lastFileId));
+                }
+                query.fields().include("files_id").exclude("_id");
+
+                Document chunk = mongoTemplate.findOne(query, Document.class, chunksCollection);
+                if (chunk == null) {
+                    exhausted = true;
+                    break;
+                }
+                lastFileId = chunk.get("files_id");
+                // Uploads in progress have chunks but no files document yet
+                if (lastFileId instanceof ObjectId id && id.getDate().before(cutoff)) {
+                    fileIds.add(lastFileId);
+                }
+            }
+            if (fileIds.isEmpty()) {
+                continue;
+            }
+
+            Query existingQuery = new Query(Criteria.where("_id").in(fileIds));
+            existingQuery.fields().include("_id");
+            Set<Object> existing = mongoTemplate.find(existingQuery, Document.class, filesCollection).stream()
+                    .map(file -> file.get("_id"))
+                    .collect(Collectors.toSet());
+
+            List<Object> missing = fileIds.stream().filter(id -> !existing.contains(id)).collect(Collectors.toList());
+            if (!missing.isEmpty()) {
+                mongoTemplate.remove(new Query(Criteria.where("files_id").in(missing)), chunksCollection);
+                removed += missing.size();
+            }
+            pause();
+        }
+        return removed;
+    }
+
+    // Avatar variants count as referenced while a profile still uses their source avatar
+    private Set<ObjectId> referencedFileIds(Set<ObjectId> candidates, Map<ObjectId, String> avatarSources) {
+        Set<ObjectId> referenced = new HashSet<>();
+        if (candidates.isEmpty()) {
+            return referenced;
+        }
+
+        // Artifacts still marked deleted count as references; purgeDeletedArtifacts owns those
+        Query artifactQuery = new Query(Criteria.where("gridFsId").in(candidates));
+        artifactQuery.fields().include("gridFsId");
+        for (Artifact artifact : mongoTemplate.find(artifactQuery, Artifact.class)) {
+            referenced.add(artifact.getGridFsId());
+        }
+
+        Set<String> avatarIds = candidates.stream().map(ObjectId::toHexString).collect(Collectors.toSet());
+        avatarIds.addAll(avatarSources.values());
+        Query profileQuery = new Query(Criteria.where("avatarId").in(avatarIds));
+        profileQuery.fields().include("avatarId");
+        Set<String> usedAvatarIds = mongoTemplate.find(profileQuery, Profile.class).stream()
+                .map(Profile::getAvatarId)
+                .collect(Collectors.toSet());
+
+        for (ObjectId id : candidates) {
+            if (usedAvatarIds.contains(id.toHexString()) || usedAvatarIds.contains(avatarSources.get(id))) {
+                referenced.add(id);
+            }
+        }
+        return referenced;
+    }
+
+    private void deleteFile(ObjectId id) {
+        blobCache.remove(id);
+        try {
+            gridFSBucket.delete(id);
+        } catch (MongoGridFSException e) {
+            // No files document; the driver has already removed any chunks left for it
+            log.debug("GridFS file {} was already gone", id);
+        }
+    }
+
+    private void pause() {
+        try {
+            Thread.sleep(batchPauseMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
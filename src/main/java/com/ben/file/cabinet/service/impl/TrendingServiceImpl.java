@@ -0,0 +1,126 @@
+package com.ben.file.cabinet.service.impl;
+
+import com.ben.file.cabinet.service.TrendingService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Trending score = sum over like events of exp(-lambda * age), kept incrementally using
+ * forward decay: each event adds exp(lambda * (t - epoch)) and the scheduled refresh moves
+ * the epoch to "now" by scaling every score down once. Likes never touch more than one map
+ * entry and nothing ever scans the like history.
+ */
+@Service
+public class TrendingServiceImpl implements TrendingService {
+
+    private static final Logger log = LoggerFactory.getLogger(TrendingServiceImpl.class);
+
+    @Value("${file.cabinet.trending.half-life-minutes:360}")
+    private double halfLifeMinutes;
+
+    @Value("${file.cabinet.trending.size:1000}")
+    private int rankedSize;
+
+    // Scores that have decayed below this are dropped so the map only holds recently liked artifacts
+    @Value("${file.cabinet.trending.min-score:0.01}")
+    private double minScore;
+
+    private final Map<String, Double> scores = new ConcurrentHashMap<>();
+    private volatile long epochMillis = System.currentTimeMillis();
+
+    // The previous snapshot is kept so clients mid-scroll can finish against a stable ordering
+    private volatile Snapshot current = new Snapshot(0, List.of());
+    private volatile Snapshot previous = current;
+
+    @Override
+    public void recordLike(String artifactId, int delta) {
+        double weight = delta * Math.exp(decayRate() * (System.currentTimeMillis() - epochMillis));
+        scores.merge(artifactId, weight, Double::sum);
+    }
+
+    @Override
+    public void remove(String artifactId) {
+        scores.remove(artifactId);
+    }
+
+    @Override
+    public TrendingPage getPage(String cursor, int page, int size) {
+        Snapshot snapshot = current;
+        int offset = page * size;
+
+        if (cursor != null && !cursor.isEmpty()) {
+            String[] parts = cursor.split(":");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            long version;
+            try {
+                version = Long.parseLong(parts[0]);
+                offset = Integer.parseInt(parts[1]);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            // An expired cursor continues at the same position of the current ranking
+            Snapshot older = previous;
+            if (older.version() == version) {
+                snapshot = older;
+            }
+        }
+
+        List<String> ids = snapshot.artifactIds();
+        int from = Math.min(Math.max(offset, 0), ids.size());
+        int to = Math.min(from + size, ids.size());
+        String nextCursor = to < ids.size() ? snapshot.version() + ":" + to : null;
+        return new TrendingPage(ids.subList(from, to), nextCursor, ids.size());
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${file.cabinet.trending.refresh-ms:30000}")
+    public void refresh() {
+        long now = System.currentTimeMillis();
+        double factor = Math.exp(-decayRate() * (now - epochMillis));
+        epochMillis = now;
+
+        // Min-heap of the best `rankedSize` scores seen so far
+        PriorityQueue<Map.Entry<String, Double>> top = new PriorityQueue<>(Map.Entry.<String, Double>comparingByValue());
+        for (String artifactId : scores.keySet()) {
+            Double score = scores.computeIfPresent(artifactId,
+                    (id, value) -> value * factor < minScore ? null : value * factor);
+            if (score == null) {
+                continue;
+            }
+            top.offer(Map.entry(artifactId, score));
+            if (top.size() > rankedSize) {
+                top.poll();
+            }
+        }
+
+        List<String> ranked = new ArrayList<>(top.size());
+        while (!top.isEmpty()) {
+            ranked.add(top.poll().getKey());
+        }
+        Collections.reverse(ranked);
+
+        previous = current;
+        current = new Snapshot(previous.version() + 1, List.copyOf(ranked));
+
+        log.debug("Refreshed trending ranking: {} ranked of {} scored artifacts", ranked.size(), scores.size());
+    }
+
+    private double decayRate() {
+        return Math.log(2) / (halfLifeMinutes * 60_000);
+    }
+
+    private record Snapshot(long version, List<String> artifactIds) {
+    }
+}
@@ -0,0 +1,171 @@
+package com.ben.file.cabinet.service.impl;
+
+import com.ben.file.cabinet.model.Artifact;
+import com.ben.file.cabinet.service.HotArtifactService;
+import com.ben.file.cabinet.service.WarmupService;
+import com.mongodb.client.gridfs.GridFSBucket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/*
+ * Preloads the artifacts from the hot snapshot on startup: their documents in one query into the
+ * artifact cache, then their files into the blob cache with bounded parallelism, hottest first.
+ *
+ * The preload runs on its own thread so other ApplicationReadyEvent listeners are not held up.
+ * isReady() (served as /api/warmup/ready) stays false until it finishes or the readiness timeout
+ * passes, after which the preload carries on while traffic is served.
+ */
+@Service
+public class WarmupServiceImpl implements WarmupService {
+
+    private static final Logger log = LoggerFactory.getLogger(WarmupServiceImpl.class);
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private GridFSBucket gridFSBucket;
+
+    @Autowired
+    private HotArtifactService hotArtifactService;
+
+    @Autowired
+    private BlobCache blobCache;
+
+    @Autowired
+    private ArtifactCache artifactCache;
+
+    @Value("${file.cabinet.warmup.enabled:true}")
+    private boolean enabled;
+
+    @Value("${file.cabinet.warmup.parallelism:4}")
+    private int parallelism;
+
+    // 0 takes traffic straight away and warms up alongside it
+    @Value("${file.cabinet.warmup.readiness-timeout-ms:30000}")
+    private long readinessTimeoutMillis;
+
+    private final AtomicInteger preloadedArtifacts = new AtomicInteger();
+    private final AtomicLong preloadedBytes = new AtomicLong();
+    private volatile State state = State.PENDING;
+    private volatile int hotArtifacts;
+    private volatile long durationMillis;
+    private volatile long readyDeadlineMillis = Long.MAX_VALUE;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        if (!enabled) {
+            state = State.COMPLETE;
+            return;
+        }
+
+        readyDeadlineMillis = System.currentTimeMillis() + readinessTimeoutMillis;
+        Thread thread = new Thread(this::preload, "warmup");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public boolean isReady() {
+        return state == State.COMPLETE || state == State.FAILED || System.currentTimeMillis() >= readyDeadlineMillis;
+    }
+
+    @Override
+    public WarmupStatus getStatus() {
+        return new WarmupStatus(state, isReady(), hotArtifacts, preloadedArtifacts.get(), preloadedBytes.get(),
+                durationMillis, artifactCache.getStats(), blobCache.getStats());
+    }
+
+    private void preload() {
+        state = State.RUNNING;
+        long start = System.nanoTime();
+        ExecutorService workers = Executors.newFixedThreadPool(parallelism, new CustomizableThreadFactory("warmup-"));
+        try {
+            List<String> ids = hotArtifactService.loadSnapshot();
+            hotArtifacts = ids.size();
+            if (!ids.isEmpty()) {
+                Query query = new Query(Criteria.where("_id").in(ids).and("deletedDate").is(null));
+                Map<String, Artifact> artifactsById;
+                artifactCache.beginFill();
+                try {
+                    artifactsById = mongoTemplate.find(query, Artifact.class).stream()
+                            .collect(Collectors.toMap(Artifact::getId, Function.identity()));
+                    artifactsById.values().forEach(artifactCache::put);
+                } finally {
+                    artifactCache.endFill();
+                }
+
+                // Stop at the cache size, loading more would only evict the hotter files loaded first
+                long budget = blobCache.getMaxBytes();
+                List<Callable<Void>> tasks = new ArrayList<>();
+                for (String id : ids) {
+                    Artifact artifact = artifactsById.get(id);
+                    if (artifact == null || artifact.getGridFsId() == null
+                            || !blobCache.accepts(artifact.getFileSize()) || artifact.getFileSize() > budget) {
+                        continue;
+                    }
+                    budget -= artifact.getFileSize();
+                    tasks.add(() -> {
+                        load(artifact);
+                        return null;
+                    });
+                }
+
+                for (Future<Void> result : workers.invokeAll(tasks)) {
+                    try {
+                        result.get();
+                    } catch (ExecutionException e) {
+                        log.debug("Could not preload an artifact", e.getCause());
+                    }
+                }
+            }
+            state = State.COMPLETE;
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            state = State.FAILED;
+        } catch (RuntimeException e) {
+            log.warn("Warm-up failed", e);
+            state = State.FAILED;
+        } finally {
+            workers.shutdownNow();
+            durationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            log.info("Warm-up {}: preloaded {} of {} hot artifacts ({} bytes) in {} ms",
+                    state, preloadedArtifacts.get(), hotArtifacts, preloadedBytes.get(), durationMillis);
+        }
+    }
+
+    private void load(Artifact artifact) throws IOException {
+        try (InputStream in = gridFSBucket.openDownloadStream(artifact.getGridFsId())) {
+            byte[] data = in.readAllBytes();
+            blobCache.put(artifact.getGridFsId(), data);
+            preloadedArtifacts.incrementAndGet();
+            preloadedBytes.addAndGet(data.length);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.ben.file.cabinet.web;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * Concurrency limit that adapts to latency, in the spirit of the gradient limiters from
+ * Netflix's concurrency-limits: a slow moving baseline latency is compared with a fast moving
+ * recent latency, and the limit shrinks while recent requests are slower than the baseline
+ * (requests are queueing somewhere downstream, e.g. in the Mongo pool) and grows again by
+ * about sqrt(limit) once they are not.
+ *
+ * Requests over the limit wait in a bounded queue for at most maxWaitMillis, then are rejected.
+ */
+class AdaptiveConcurrencyLimiter {
+
+    private static final double LONG_WINDOW = 600;
+    private static final double SHORT_WINDOW = 10;
+    private static final double TOLERANCE = 1.5;
+    private static final double SMOOTHING = 0.2;
+    private static final int MIN_LIMIT = 1;
+
+    private final int maxLimit;
+    private final int queueSize;
+    private final long maxWaitNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+
+    private double limit;
+    private int inFlight;
+    private int waiting;
+    private double longRtt;
+    private double shortRtt;
+
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong shed = new AtomicLong();
+
+    AdaptiveConcurrencyLimiter(int initialLimit, int maxLimit, int queueSize, long maxWaitMillis) {
+        this.limit = Math.max(MIN_LIMIT, Math.min(initialLimit, maxLimit));
+        this.maxLimit = maxLimit;
+        this.queueSize = queueSize;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+    }
+
+    boolean tryAcquire() throws InterruptedException {
+        lock.lock();
+        try {
+            if (waiting == 0 && inFlight < (int) limit) {
+                inFlight++;
+                admitted.incrementAndGet();
+                return true;
+            }
+            if (waiting >= queueSize || maxWaitNanos == 0) {
+                rejected.incrementAndGet();
+                return false;
+            }
+
+            waiting++;
+            queued.incrementAndGet();
+            try {
+                long remaining = maxWaitNanos;
+                while (inFlight >= (int) limit) {
+                    if (remaining <= 0) {
+                        rejected.incrementAndGet();
+                        return false;
+                    }
+                    remaining = released.awaitNanos(remaining);
+                }
+            } finally {
+                waiting--;
+            }
+            inFlight++;
+            admitted.incrementAndGet();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void release(long rttNanos) {
+        lock.lock();
+        try {
+            inFlight--;
+            update(rttNanos);
+            released.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Rejected without queueing because higher priority traffic is backlogged
+    void recordShed() {
+        shed.incrementAndGet();
+        rejected.incrementAndGet();
+    }
+
+    // True while requests are waiting for this limiter, used to shed lower priority traffic
+    boolean isBacklogged() {
+        lock.lock();
+        try {
+            return waiting > 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    Map<String, Object> snapshot() {
+        lock.lock();
+        try {
+            Map<String, Object> snapshot = new LinkedHashMap<>();
+            snapshot.put("limit", (int) limit);
+            snapshot.put("inFlight", inFlight);
+            snapshot.put("waiting", waiting);
+            snapshot.put("admitted", admitted.get());
+            snapshot.put("queued", queued.get());
+            snapshot.put("rejected", rejected.get());
+            snapshot.put("shed", shed.get());
+            snapshot.put("shortRttMillis", shortRtt / 1_000_000);
+            snapshot.put("longRttMillis", longRtt / 1_000_000);
+            return snapshot;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void update(long rttNanos) {
+        if (longRtt == 0) {
+            longRtt = rttNanos;
+            shortRtt = rttNanos;
+            return;
+        }
+        shortRtt += (rttNanos - shortRtt) / SHORT_WINDOW;
+        longRtt += (rttNanos - longRtt) / LONG_WINDOW;
+
+        // Let the baseline catch up quickly when latency recovers after a slow period
+        if (longRtt / shortRtt > 2) {
+            longRtt *= 0.95;
+        }
+
+        // Only adjust while the limit is actually being used, idle traffic says nothing about capacity
+        if (inFlight < limit / 2) {
+            return;
+        }
+
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longRtt / shortRtt));
+        double newLimit = limit * gradient + Math.sqrt(limit);
+        limit = Math.max(MIN_LIMIT, Math.min(maxLimit, limit * (1 - SMOOTHING) + newLimit * SMOOTHING));
+    }
+}
@@ -0,0 +1,14 @@
+package com.ben.file.cabinet.web;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// Puts a controller, or a single handler method, under admission control for the given class
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Admission {
+
+    EndpointClass value();
+}
@@ -0,0 +1,145 @@
+package com.ben.file.cabinet.web;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * Admission control for the endpoints annotated with @Admission. Each endpoint class gets its own
+ * adaptive limiter, so a burst of uploads or full size downloads is queued and then rejected with
+ * 503 + Retry-After instead of taking the Tomcat threads and Mongo connections the feed needs.
+ * While feed requests are queueing, non-prioritized requests are rejected straight away.
+ *
+ * The permit is kept in a request attribute until afterCompletion, which for streamed responses
+ * only runs once the async dispatch has finished writing. The latency fed to the limiter stops
+ * when the response body is about to be written (see AdmissionTimingAdvice), so a slow client
+ * draining a large image is not mistaken for an overloaded database.
+ */
+@Component
+public class AdmissionControlInterceptor implements AsyncHandlerInterceptor {
+
+    private static final String PERMIT_ATTRIBUTE = AdmissionControlInterceptor.class.getName() + ".permit";
+    static final String HANDLED_ATTRIBUTE = AdmissionControlInterceptor.class.getName() + ".handled";
+
+    @Autowired
+    private Environment environment;
+
+    @Value("${file.cabinet.admission.enabled:true}")
+    private boolean enabled;
+
+    @Value("${file.cabinet.admission.retry-after-seconds:1}")
+    private int retryAfterSeconds;
+
+    private final Map<EndpointClass, AdaptiveConcurrencyLimiter> limiters = new EnumMap<>(EndpointClass.class);
+
+    @PostConstruct
+    public void init() {
+        for (EndpointClass endpointClass : EndpointClass.values()) {
+            String prefix = "file.cabinet.admission." + endpointClass.propertyName() + ".";
+            limiters.put(endpointClass, new AdaptiveConcurrencyLimiter(
+                    environment.getProperty(prefix + "initial-limit", Integer.class, endpointClass.getInitialLimit()),
+                    environment.getProperty(prefix + "max-limit", Integer.class, endpointClass.getMaxLimit()),
+                    environment.getProperty(prefix + "queue-size", Integer.class, endpointClass.getQueueSize()),
+                    environment.getProperty(prefix + "max-wait-ms", Long.class, endpointClass.getMaxWaitMillis())));
+        }
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        // Async dispatches of a streamed response already hold the permit from the first dispatch
+        if (!enabled || request.getDispatcherType() == DispatcherType.ASYNC) {
+            return true;
+        }
+        EndpointClass endpointClass = classify(handler);
+        if (endpointClass == null) {
+            return true;
+        }
+
+        if (!endpointClass.isPrioritized() && isPriorityBacklogged()) {
+            limiters.get(endpointClass).recordShed();
+            reject(response, endpointClass);
+            return false;
+        }
+
+        AdaptiveConcurrencyLimiter limiter = limiters.get(endpointClass);
+        boolean admitted;
+        try {
+            admitted = limiter.tryAcquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            admitted = false;
+        }
+        if (!admitted) {
+            reject(response, endpointClass);
+            return false;
+        }
+
+        request.setAttribute(PERMIT_ATTRIBUTE, new Permit(limiter, System.nanoTime()));
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        if (request.getAttribute(PERMIT_ATTRIBUTE) instanceof Permit permit) {
+            request.removeAttribute(PERMIT_ATTRIBUTE);
+            long end = request.getAttribute(HANDLED_ATTRIBUTE) instanceof Long handled ? handled : System.nanoTime();
+            permit.limiter().release(end - permit.startNanos());
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        for (Map.Entry<EndpointClass, AdaptiveConcurrencyLimiter> entry : limiters.entrySet()) {
+            stats.put(entry.getKey().propertyName(), entry.getValue().snapshot());
+        }
+        return stats;
+    }
+
+    private EndpointClass classify(Object handler) {
+        if (!(handler instanceof HandlerMethod handlerMethod)) {
+            return null;
+        }
+        Admission admission = AnnotatedElementUtils.findMergedAnnotation(handlerMethod.getMethod(), Admission.class);
+        if (admission == null) {
+            admission = AnnotatedElementUtils.findMergedAnnotation(handlerMethod.getBeanType(), Admission.class);
+        }
+        return admission == null ? null : admission.value();
+    }
+
+    private boolean isPriorityBacklogged() {
+        for (Map.Entry<EndpointClass, AdaptiveConcurrencyLimiter> entry : limiters.entrySet()) {
+            if (entry.getKey().isPrioritized() && entry.getValue().isBacklogged()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void reject(HttpServletResponse response, EndpointClass endpointClass) throws IOException {
+        response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.getWriter().write("{\"status\":503,\"error\":\"Service Unavailable\",\"message\":\"Too many "
+                + endpointClass.propertyName() + " requests, retry later\"}");
+    }
+
+    private record Permit(AdaptiveConcurrencyLimiter limiter, long startNanos) {
+    }
+}
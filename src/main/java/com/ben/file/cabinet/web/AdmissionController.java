@@ -0,0 +1,22 @@
+package com.ben.file.cabinet.web;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/admission")
+public class AdmissionController {
+
+    @Autowired
+    private AdmissionControlInterceptor admissionControlInterceptor;
+
+    // Current limit, in-flight, queued and admitted/rejected counters per endpoint class
+    @GetMapping({"/", ""})
+    public Map<String, Object> getStats() {
+        return admissionControlInterceptor.getStats();
+    }
+}
@@ -2,6 +2,8 @@ package com.ben.file.cabinet.web;
 
 import com.ben.file.cabinet.model.Artifact;
 import com.ben.file.cabinet.service.ArtifactService;
+import com.ben.file.cabinet.service.ImageMetadataService;
+import com.ben.file.cabinet.service.TrendingService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -12,21 +14,41 @@ import org.springframework.web.server.ResponseStatusException;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @RestController
+@Admission(EndpointClass.METADATA)
 @RequestMapping("/api/artifacts")
 public class ArtifactController {
 
+    private static final int MAX_LIKE_STATUS_IDS = 100;
+    private static final int MAX_BULK_DELETE_IDS = 1000;
+
     @Autowired
     private ArtifactService artifactService;
 
+    @Autowired
+    private TrendingService trendingService;
+
+    @Autowired
+    private ImageMetadataService imageMetadataService;
+
     // Paginated endpoint for infinite scroll
+    @Admission(EndpointClass.FEED)
     @GetMapping({"/", ""})
     public Map<String, Object> get(
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "20") int size,
-            @RequestParam(defaultValue = "uploadDate") String sortBy) {
+            @RequestParam(defaultValue = "uploadDate") String sortBy,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) String userId) {
+
+        if (sortBy.equalsIgnoreCase("trending")) {
+            return getTrending(page, size, cursor, userId);
+        }
 
         Collection<Artifact> artifacts;
 
@@ -48,10 +70,43 @@ public class ArtifactController {
         response.put("currentPage", page);
         response.put("pageSize", size);
         response.put("totalCount", artifactService.getTotalCount());
+        putLikedIds(response, artifacts, userId);
+
+        return response;
+    }
+
+    // Trending is paged by cursor so a scroll stays on one ranking snapshot between refreshes
+    private Map<String, Object> getTrending(int page, int size, String cursor, String userId) {
+        TrendingService.TrendingPage trendingPage;
+        try {
+            trendingPage = trendingService.getPage(cursor, page, size);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+
+        List<Artifact> artifacts = artifactService.get(trendingPage.artifactIds());
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("artifacts", artifacts);
+        response.put("hasMore", trendingPage.nextCursor() != null);
+        response.put("nextCursor", trendingPage.nextCursor());
+        response.put("currentPage", page);
+        response.put("pageSize", size);
+        response.put("totalCount", trendingPage.totalCount());
+        putLikedIds(response, artifacts, userId);
 
         return response;
     }
 
+    // When the feed is requested for a user, embed which artifacts on the page they liked
+    private void putLikedIds(Map<String, Object> response, Collection<Artifact> artifacts, String userId) {
+        if (userId == null || artifacts.isEmpty()) {
+            return;
+        }
+        List<String> ids = artifacts.stream().map(Artifact::getId).collect(Collectors.toList());
+        response.put("likedIds", artifactService.getLikedArtifactIds(ids, userId));
+    }
+
     @GetMapping("/{id}")
     public Artifact get(@PathVariable String id) {
         Artifact artifact = artifactService.get(id);
@@ -74,6 +129,24 @@ public class ArtifactController {
         return ResponseEntity.ok(response);
     }
 
+    // Artifacts disappear from reads immediately, blobs and documents are purged in the background
+    @Admission(EndpointClass.BULK)
+    @PostMapping("/bulk-delete")
+    public ResponseEntity<Map<String, Object>> bulkDelete(@RequestBody List<String> ids) {
+        if (ids.isEmpty() || ids.size() > MAX_BULK_DELETE_IDS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Between 1 and " + MAX_BULK_DELETE_IDS + " ids are required");
+        }
+
+        long marked = artifactService.markDeleted(ids);
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("requested", ids.size());
+        response.put("deleted", marked);
+        response.put("message", "Artifacts marked for deletion");
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(response);
+    }
+
+    @Admission(EndpointClass.UPLOAD)
     @PostMapping({"/", ""})
     public ResponseEntity<Artifact> create(
             @RequestParam("file") MultipartFile file,
@@ -110,6 +183,7 @@ public class ArtifactController {
     }
 
     // Like system endpoints
+    @Admission(EndpointClass.INTERACTION)
     @PostMapping("/{id}/like")
     public ResponseEntity<Map<String, Object>> incrementLike(@PathVariable String id) {
         Artifact artifact = artifactService.incrementLike(id);
@@ -124,6 +198,7 @@ public class ArtifactController {
         return ResponseEntity.ok(response);
     }
 
+    @Admission(EndpointClass.INTERACTION)
     @DeleteMapping("/{id}/like")
     public ResponseEntity<Map<String, Object>> decrementLike(@PathVariable String id) {
         Artifact artifact = artifactService.decrementLike(id);
@@ -139,6 +214,7 @@ public class ArtifactController {
     }
 
     // Future per-user like endpoint (when auth is implemented)
+    @Admission(EndpointClass.INTERACTION)
     @PostMapping("/{id}/toggle-like")
     public ResponseEntity<Map<String, Object>> toggleLike(
             @PathVariable String id,
@@ -159,6 +235,47 @@ public class ArtifactController {
         return ResponseEntity.ok(response);
     }
 
+    // Liked / not liked for a whole page of artifacts in one query, e.g. ?ids=a,b,c&userId=u
+    @Admission(EndpointClass.FEED)
+    @GetMapping("/like-status")
+    public Map<String, Object> likeStatus(
+            @RequestParam List<String> ids,
+            @RequestParam(required = false, defaultValue = "anonymous") String userId) {
+
+        if (ids.size() > MAX_LIKE_STATUS_IDS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "At most " + MAX_LIKE_STATUS_IDS + " ids are allowed");
+        }
+
+        Set<String> likedIds = artifactService.getLikedArtifactIds(ids, userId);
+        Map<String, Boolean> liked = new HashMap<>();
+        for (String id : ids) {
+            liked.put(id, likedIds.contains(id));
+        }
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("userId", userId);
+        response.put("liked", liked);
+        return response;
+    }
+
+    // Extracts dimensions and placeholders for artifacts uploaded before they existed
+    @Admission(EndpointClass.BULK)
+    @PostMapping("/metadata/backfill")
+    public ResponseEntity<Map<String, Object>> startMetadataBackfill() {
+        boolean started = imageMetadataService.startBackfill();
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("started", started);
+        response.put("status", imageMetadataService.getBackfillStatus());
+        response.put("message", started ? "Metadata backfill started" : "Metadata backfill is already running");
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(response);
+    }
+
+    @GetMapping("/metadata/backfill")
+    public ImageMetadataService.BackfillStatus getMetadataBackfill() {
+        return imageMetadataService.getBackfillStatus();
+    }
+
     // Search endpoints
     @GetMapping("/search")
     public Collection<Artifact> search(@RequestParam String fileName) {
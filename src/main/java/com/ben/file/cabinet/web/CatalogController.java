@@ -0,0 +1,60 @@
+package com.ben.file.cabinet.web;
+
+import com.ben.file.cabinet.service.CatalogTransferService;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+
+@RestController
+@Admission(EndpointClass.TRANSFER)
+@RequestMapping("/api/catalog")
+public class CatalogController {
+
+    private static final String ZIP_CONTENT_TYPE = "application/zip";
+
+    @Autowired
+    private CatalogTransferService catalogTransferService;
+
+    // Written on the request thread rather than as a StreamingResponseBody, a full export
+    // easily outlasts the async request timeout
+    @GetMapping("/export")
+    public void exportCatalog(HttpServletResponse response) throws IOException {
+        response.setContentType(ZIP_CONTENT_TYPE);
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                .filename("catalog-" + LocalDate.now() + ".zip")
+                .build()
+                .toString());
+        catalogTransferService.exportCatalog(response.getOutputStream());
+    }
+
+    // Takes the archive as the raw request body, so it is read as it arrives instead of buffered as a multipart file
+    @PostMapping(value = "/import", consumes = {ZIP_CONTENT_TYPE, "application/octet-stream"})
+    public Map<String, Object> importCatalog(InputStream body) {
+        CatalogTransferService.ImportResult result;
+        try {
+            result = catalogTransferService.importCatalog(body);
+        } catch (IOException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Error reading catalog archive: " + e.getMessage());
+        }
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("imported", result.imported());
+        response.put("skipped", result.skipped());
+        response.put("failed", result.failed());
+        response.put("complete", result.complete());
+        response.put("message", result.complete()
+                ? "Catalog imported"
+                : "Catalog partially imported, run the import again with the same archive to resume");
+        return response;
+    }
+}
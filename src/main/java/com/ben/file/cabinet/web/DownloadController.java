@@ -12,6 +12,7 @@ import java.io.IOException;
 import java.io.InputStream;
 
 @RestController
+@Admission(EndpointClass.DOWNLOAD)
 @RequestMapping(path = "/api")
 public class DownloadController {
 
@@ -26,7 +27,7 @@ public class DownloadController {
                 throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Artifact not found");
             }
 
-            InputStream fileStream = artifactService.getFileData(id);
+            InputStream fileStream = artifactService.getFileData(artifact);
             InputStreamResource resource = new InputStreamResource(fileStream);
 
             HttpHeaders headers = new HttpHeaders();
@@ -56,7 +57,7 @@ public class DownloadController {
                 throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Artifact not found");
             }
 
-            InputStream fileStream = artifactService.getFileData(id);
+            InputStream fileStream = artifactService.getFileData(artifact);
             InputStreamResource resource = new InputStreamResource(fileStream);
 
             HttpHeaders headers = new HttpHeaders();
@@ -79,6 +80,7 @@ public class DownloadController {
         }
     }
 
+    // Streams the original for now, so it is admitted as a download rather than prioritized feed traffic
     @GetMapping("/thumbnail/{id}")
     public ResponseEntity<InputStreamResource> thumbnail(@PathVariable String id) {
         // For future implementation - could generate thumbnails on the fly
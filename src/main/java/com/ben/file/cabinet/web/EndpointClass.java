@@ -0,0 +1,55 @@
+package com.ben.file.cabinet.web;
+
+// Groups endpoints by cost for admission control. Defaults can be overridden per class with
+// file.cabinet.admission.<class>.initial-limit / max-limit / queue-size / max-wait-ms
+public enum EndpointClass {
+
+    // Feed pages, like status and avatars: what the gallery needs to render
+    FEED(true, 40, 150, 100, 500),
+    INTERACTION(false, 20, 100, 50, 200),
+    METADATA(false, 20, 100, 50, 200),
+    DOWNLOAD(false, 20, 80, 20, 100),
+    UPLOAD(false, 5, 20, 10, 100),
+    BULK(false, 1, 2, 0, 0),
+    // Catalog export and import hold their permit for as long as the transfer runs, so they get
+    // their own class rather than blocking the short bulk operations for hours
+    TRANSFER(false, 1, 1, 0, 0);
+
+    private final boolean prioritized;
+    private final int initialLimit;
+    private final int maxLimit;
+    private final int queueSize;
+    private final long maxWaitMillis;
+
+    EndpointClass(boolean prioritized, int initialLimit, int maxLimit, int queueSize, long maxWaitMillis) {
+        this.prioritized = prioritized;
+        this.initialLimit = initialLimit;
+        this.maxLimit = maxLimit;
+        this.queueSize = queueSize;
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    public boolean isPrioritized() {
+        return prioritized;
+    }
+
+    public int getInitialLimit() {
+        return initialLimit;
+    }
+
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public long getMaxWaitMillis() {
+        return maxWaitMillis;
+    }
+
+    public String propertyName() {
+        return name().toLowerCase();
+    }
+}
@@ -2,30 +2,97 @@ package com.ben.file.cabinet.web;
 
 import com.ben.file.cabinet.model.Artifact;
 import com.ben.file.cabinet.model.Profile;
+import com.ben.file.cabinet.service.AvatarService;
 import com.ben.file.cabinet.service.ProfileService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.data.mongodb.gridfs.GridFsResource;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.io.IOException;
-import java.util.Collection;
+import java.io.OutputStream;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 @RestController
+@Admission(EndpointClass.METADATA)
 @RequestMapping("/api/profiles")
 public class ProfileController {
 
+    private static final int MAX_BATCH_IDS = 100;
+    private static final int MAX_PAGE_SIZE = 500;
+    private static final int STREAM_FLUSH_INTERVAL = 1000;
+
     @Autowired
     private ProfileService profileService;
 
+    @Autowired
+    private AvatarService avatarService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // Cursor paginated listing, pass nextCursor back as cursor for the following page
     @GetMapping({"/", ""})
-    public Map<String, Object> get(){
-        Collection<Profile> profiles = profileService.get();
+    public Map<String, Object> get(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+
+        // One extra row tells us whether there is another page
+        List<Profile> profiles = profileService.get(cursor, limit + 1);
+        boolean hasMore = profiles.size() > limit;
+        if (hasMore) {
+            profiles = profiles.subList(0, limit);
+        }
+
         Map<String, Object> response = new HashMap<>();
         response.put("profiles", profiles);
+        response.put("hasMore", hasMore);
+        response.put("nextCursor", hasMore ? profiles.get(profiles.size() - 1).getId() : null);
+        return response;
+    }
+
+    // Every profile as newline delimited JSON, written straight from the Mongo cursor. Written on the
+    // request thread rather than as a StreamingResponseBody, the async request timeout would cut it off
+    @Admission(EndpointClass.BULK)
+    @GetMapping("/stream")
+    public void stream(HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        OutputStream out = response.getOutputStream();
+        try (Stream<Profile> profiles = profileService.stream()) {
+            int written = 0;
+            for (Profile profile : (Iterable<Profile>) profiles::iterator) {
+                out.write(objectMapper.writeValueAsBytes(profile));
+                out.write('\n');
+                if (++written % STREAM_FLUSH_INTERVAL == 0) {
+                    out.flush();
+                }
+            }
+            out.flush();
+        }
+    }
+
+    @GetMapping("/batch")
+    public Map<String, Object> batch(@RequestParam List<String> ids) {
+        if (ids.size() > MAX_BATCH_IDS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "At most " + MAX_BATCH_IDS + " ids are allowed");
+        }
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("profiles", profileService.get(ids));
         return response;
     }
 
@@ -38,6 +105,92 @@ public class ProfileController {
         return profile;
     }
 
+    // Avatar URLs for a list of profiles, e.g. ?ids=a,b,c
+    @Admission(EndpointClass.FEED)
+    @GetMapping("/avatars")
+    public Map<String, Object> avatars(@RequestParam List<String> ids) {
+        if (ids.size() > MAX_BATCH_IDS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "At most " + MAX_BATCH_IDS + " ids are allowed");
+        }
+
+        Map<String, Object> avatars = new HashMap<>();
+        for (Profile profile : profileService.get(ids)) {
+            Map<String, Object> avatar = new HashMap<>();
+            avatar.put("avatarId", profile.getAvatarId());
+            if (profile.getAvatarId() != null) {
+                Map<Integer, String> urls = new HashMap<>();
+                for (int size : AvatarService.SIZES) {
+                    urls.put(size, avatarUrl(profile.getAvatarId(), size));
+                }
+                avatar.put("urls", urls);
+            }
+            avatars.put(profile.getId(), avatar);
+        }
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("avatars", avatars);
+        return response;
+    }
+
+    // Variants are addressed by avatar id, so their content never changes and can be cached for a year
+    @Admission(EndpointClass.FEED)
+    @GetMapping("/avatars/{avatarId}")
+    public ResponseEntity<InputStreamResource> avatarVariant(
+            @PathVariable String avatarId,
+            @RequestParam(defaultValue = "64") int size,
+            @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
+        return avatarResponse(avatarId, size, ifNoneMatch, CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic().immutable());
+    }
+
+    // The profile URL stays the same when the avatar changes, so clients revalidate with the ETag
+    @Admission(EndpointClass.FEED)
+    @GetMapping("/{id}/avatar")
+    public ResponseEntity<InputStreamResource> avatar(
+            @PathVariable String id,
+            @RequestParam(defaultValue = "64") int size,
+            @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
+        Profile profile = profileService.get(id);
+        if (profile == null || profile.getAvatarId() == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Avatar not found");
+        }
+        return avatarResponse(profile.getAvatarId(), size, ifNoneMatch, CacheControl.noCache().cachePublic());
+    }
+
+    private ResponseEntity<InputStreamResource> avatarResponse(String avatarId, int size, String ifNoneMatch, CacheControl cacheControl) {
+        if (!AvatarService.SIZES.contains(size)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Avatar size must be one of " + AvatarService.SIZES);
+        }
+
+        String etag = "\"" + avatarId + "-" + size + "\"";
+        if (etag.equals(ifNoneMatch)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(etag)
+                    .cacheControl(cacheControl)
+                    .build();
+        }
+
+        try {
+            GridFsResource variant = avatarService.getVariant(avatarId, size);
+            if (variant == null) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Avatar not found");
+            }
+
+            return ResponseEntity.ok()
+                    .contentType(MediaType.IMAGE_PNG)
+                    .contentLength(variant.contentLength())
+                    .eTag(etag)
+                    .cacheControl(cacheControl)
+                    .body(new InputStreamResource(variant.getInputStream()));
+
+        } catch (IOException e) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Error retrieving avatar: " + e.getMessage());
+        }
+    }
+
+    private String avatarUrl(String avatarId, int size) {
+        return "/api/profiles/avatars/" + avatarId + "?size=" + size;
+    }
+
     @DeleteMapping("/{id}")
     public ResponseEntity<Map<String, String>> delete(@PathVariable String id) {
         Profile profile = profileService.remove(id);
@@ -0,0 +1,128 @@
+package com.ben.file.cabinet.web;
+
+import com.ben.file.cabinet.service.WarmupService;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Records /api latencies during the first minute of traffic after a start, to see how much a
+// cold cache costs and whether the warm-up pays off. Afterwards it only compares a timestamp.
+// The window opens once the instance reports ready; load balancer probes and the admission and
+// warm-up status endpoints are never sampled, so they cannot fill it with trivial requests.
+@Component
+public class StartupLatencyFilter extends OncePerRequestFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(StartupLatencyFilter.class);
+
+    private static final int MAX_SAMPLES = 100_000;
+
+    @Autowired
+    private WarmupService warmupService;
+
+    @Value("${file.cabinet.warmup.latency-window-ms:60000}")
+    private long windowMillis;
+
+    private final AtomicLongArray samples = new AtomicLongArray(MAX_SAMPLES);
+    private final AtomicInteger sampleCount = new AtomicInteger();
+    private final AtomicLong windowStart = new AtomicLong();
+    private final AtomicBoolean reported = new AtomicBoolean();
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String uri = request.getRequestURI();
+        return !uri.startsWith("/api/") || isStatusEndpoint(uri);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        long start = System.nanoTime();
+        // The window opens with the first request once ready, not when the context started
+        if (windowStart.get() == 0) {
+            if (!warmupService.isReady()) {
+                chain.doFilter(request, response);
+                return;
+            }
+            windowStart.compareAndSet(0, start);
+        }
+        if (isWindowClosed(start)) {
+            if (reported.compareAndSet(false, true)) {
+                report();
+            }
+            chain.doFilter(request, response);
+            return;
+        }
+
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            int index = sampleCount.getAndIncrement();
+            if (index < MAX_SAMPLES) {
+                samples.set(index, System.nanoTime() - start);
+            }
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        int count = Math.min(sampleCount.get(), MAX_SAMPLES);
+        long[] sorted = new long[count];
+        for (int i = 0; i < count; i++) {
+            sorted[i] = samples.get(i);
+        }
+        Arrays.sort(sorted);
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("windowMillis", windowMillis);
+        stats.put("windowComplete", windowStart.get() != 0 && isWindowClosed(System.nanoTime()));
+        stats.put("requests", sampleCount.get());
+        stats.put("p50Millis", percentileMillis(sorted, 0.50));
+        stats.put("p99Millis", percentileMillis(sorted, 0.99));
+        stats.put("maxMillis", count == 0 ? 0 : toMillis(sorted[count - 1]));
+        return stats;
+    }
+
+    // Logged by the first request after the window, the numbers are also available from /api/warmup
+    private void report() {
+        Map<String, Object> stats = getStats();
+        log.info("Latency in the first {} ms after start: {} requests, p50 {} ms, p99 {} ms, max {} ms",
+                windowMillis, stats.get("requests"), stats.get("p50Millis"), stats.get("p99Millis"), stats.get("maxMillis"));
+    }
+
+    private static boolean isStatusEndpoint(String uri) {
+        return uri.equals("/api/warmup") || uri.startsWith("/api/warmup/")
+                || uri.equals("/api/admission") || uri.startsWith("/api/admission/");
+    }
+
+    private boolean isWindowClosed(long nanos) {
+        return nanos - windowStart.get() > TimeUnit.MILLISECONDS.toNanos(windowMillis);
+    }
+
+    private static double percentileMillis(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return toMillis(sorted[Math.max(0, index)]);
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
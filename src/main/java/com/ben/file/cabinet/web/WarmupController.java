@@ -0,0 +1,55 @@
+package com.ben.file.cabinet.web;
+
+import com.ben.file.cabinet.service.WarmupService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.availability.ApplicationAvailability;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/warmup")
+public class WarmupController {
+
+    @Autowired
+    private WarmupService warmupService;
+
+    @Autowired
+    private ApplicationAvailability applicationAvailability;
+
+    @Autowired
+    private StartupLatencyFilter startupLatencyFilter;
+
+    // Readiness, preload progress and the latency of the first minute of traffic
+    @GetMapping({"/", ""})
+    public Map<String, Object> getStatus() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("readiness", applicationAvailability.getReadinessState());
+        response.put("warmup", warmupService.getStatus());
+        response.put("startupLatency", startupLatencyFilter.getStats());
+        return response;
+    }
+
+    // Readiness probe for the load balancer: 503 until the application accepts traffic and the
+    // hot set is preloaded (or the readiness timeout has passed)
+    @GetMapping("/ready")
+    public Map<String, Object> ready() {
+        ReadinessState readiness = applicationAvailability.getReadinessState();
+        WarmupService.WarmupStatus warmup = warmupService.getStatus();
+        if (readiness != ReadinessState.ACCEPTING_TRAFFIC || !warmup.ready()) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                    "Not ready: readiness " + readiness + ", warm-up " + warmup.state());
+        }
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("readiness", readiness);
+        response.put("warmup", warmup.state());
+        return response;
+    }
+}
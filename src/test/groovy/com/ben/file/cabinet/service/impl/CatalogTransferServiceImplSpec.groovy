@@ -0,0 +1,231 @@
+package com.ben.file.cabinet.service.impl
+
+import com.ben.file.cabinet.GridFsChunkSizePolicy
+import com.ben.file.cabinet.service.LeaderboardService
+import com.mongodb.MongoGridFSException
+import com.mongodb.client.gridfs.GridFSBucket
+import com.mongodb.client.gridfs.GridFSDownloadStream
+import com.mongodb.client.gridfs.model.GridFSUploadOptions
+import org.bson.Document
+import org.bson.types.ObjectId
+import org.springframework.data.mongodb.core.BulkOperations
+import org.springframework.data.mongodb.core.MongoTemplate
+import org.springframework.data.mongodb.core.query.Query
+import spock.lang.Specification
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.zip.ZipEntry
+import java.util.zip.ZipInputStream
+import java.util.zip.ZipOutputStream
+
+class CatalogTransferServiceImplSpec extends Specification {
+
+    CatalogTransferServiceImpl service = new CatalogTransferServiceImpl()
+
+    // The cluster exported from
+    List<Document> sourceArtifacts = []
+    Map<ObjectId, byte[]> sourceBlobs = [:]
+    Map<ObjectId, GridFSDownloadStream> downloads = [:]
+
+    // The cluster imported into, read and written from the transfer threads
+    List<Document> targetArtifacts = new CopyOnWriteArrayList<>()
+    Map<ObjectId, byte[]> targetBlobs = new ConcurrentHashMap<>()
+    Map<String, List<Number>> leaderboardUpdates = new ConcurrentHashMap<>()
+
+    def setup() {
+        MongoTemplate mongoTemplate = Stub()
+        mongoTemplate.stream(_ as Query, Document, "artifact") >> {
+            sourceArtifacts.findAll { it.get("deletedDate") == null }.sort { it.getString("_id") }.stream()
+        }
+        mongoTemplate.exists(_ as Query, "artifact") >> { Query query, String collection ->
+            targetArtifacts.any { it.get("_id") == query.queryObject.get("_id") }
+        }
+        BulkOperations bulk = Stub()
+        bulk.insert(_ as List) >> { List documents ->
+            targetArtifacts.addAll(documents)
+            return bulk
+        }
+        mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, "artifact") >> bulk
+
+        GridFSBucket gridFSBucket = Stub()
+        gridFSBucket.openDownloadStream(_ as ObjectId) >> { ObjectId id ->
+            if (!sourceBlobs.containsKey(id)) {
+                throw new MongoGridFSException("No file found with the id: " + id)
+            }
+            return downloads[id]
+        }
+        gridFSBucket.uploadFromStream(_ as String, _ as InputStream, _ as GridFSUploadOptions) >> {
+            String fileName, InputStream source, GridFSUploadOptions options ->
+                ObjectId id = new ObjectId()
+                targetBlobs[id] = source.readAllBytes()
+                return id
+        }
+
+        LeaderboardService leaderboardService = Stub()
+        leaderboardService.update(_, _, _) >> { String id, int likeCount, long likeVersion ->
+            leaderboardUpdates[id] = [likeCount, likeVersion]
+        }
+
+        service.mongoTemplate = mongoTemplate
+        service.gridFSBucket = gridFSBucket
+        service.chunkSizePolicy = new GridFsChunkSizePolicy(261120, 4194304, 1048576)
+        service.leaderboardService = leaderboardService
+        // A window and batches smaller than the catalog, so both wrap around
+        service.threads = 2
+        service.window = 2
+        service.batchSize = 2
+        service.maxBlobBytes = 1024 * 1024
+        service.start()
+    }
+
+    def cleanup() {
+        service.stop()
+    }
+
+    def "an exported catalog imports into an empty cluster unchanged"() {
+        given:
+        def live = [artifact("a1", 10, 4), artifact("a2", 300_000, 0), artifact("a3", 1000, 7),
+                    artifact("a4", 5, 1), artifact("a5", 70_000, 2)]
+        artifact("deleted", 100, 3).append("deletedDate", new Date())
+        sourceBlobs.remove(artifact("missing", 100, 3).get("gridFsId"))
+
+        when:
+        def exported = export()
+        def imported = service.importCatalog(new ByteArrayInputStream(exported.archive))
+
+        then:
+        exported.result.artifacts() == 5
+        exported.result.missingBlobs() == 1
+        exported.result.bytes() == 371_015
+        imported.imported() == 5
+        imported.skipped() == 0
+        imported.failed() == 0
+        imported.complete()
+
+        and: "every document comes back as it was, pointing at a copy of its blob"
+        targetArtifacts*.getString("_id").sort() == ["a1", "a2", "a3", "a4", "a5"]
+        live.every { source ->
+            def target = targetArtifacts.find { it.getString("_id") == source.getString("_id") }
+            withoutGridFsId(target) == withoutGridFsId(source)
+                    && targetBlobs[target.get("gridFsId")] == sourceBlobs[source.get("gridFsId")]
+        }
+        leaderboardUpdates == [a1: [4, 4L], a2: [0, 0L], a3: [7, 7L], a4: [1, 1L], a5: [2, 2L]]
+    }
+
+    def "skips an artifact whose blob does not match its checksum"() {
+        given:
+        ["a1", "a2", "a3"].each { artifact(it, 1000, 1) }
+        def tampered = rewrite(export().archive) { String name, int index, byte[] data ->
+            if (name == "blobs/a2") {
+                data[0] = (byte) (data[0] ^ 1)
+            }
+            return data
+        }
+
+        when:
+        def imported = service.importCatalog(new ByteArrayInputStream(tampered))
+
+        then:
+        imported.imported() == 2
+        imported.failed() == 1
+        !imported.complete()
+        targetArtifacts*.getString("_id").sort() == ["a1", "a3"]
+        targetBlobs.size() == 2
+    }
+
+    def "reports an archive without its manifest as incomplete"() {
+        given:
+        ["a1", "a2", "a3"].each { artifact(it, 1000, 1) }
+        def truncated = rewrite(export().archive) { String name, int index, byte[] data ->
+            name == "manifest.json" ? null : data
+        }
+
+        when:
+        def imported = service.importCatalog(new ByteArrayInputStream(truncated))
+
+        then: "everything that was there is imported, but nothing says that was all of it"
+        imported.imported() == 3
+        imported.failed() == 0
+        !imported.complete()
+    }
+
+    def "importing the archive again resumes an interrupted import"() {
+        given:
+        ["a1", "a2", "a3", "a4", "a5"].each { artifact(it, 1000, 1) }
+        byte[] archive = export().archive
+        // The first two artifacts made it before the connection dropped
+        def interrupted = rewrite(archive) { String name, int index, byte[] data -> index < 4 ? data : null }
+
+        when:
+        def first = service.importCatalog(new ByteArrayInputStream(interrupted))
+
+        then:
+        first.imported() == 2
+        !first.complete()
+
+        when:
+        def rerun = service.importCatalog(new ByteArrayInputStream(archive))
+
+        then:
+        rerun.imported() == 3
+        rerun.skipped() == 2
+        rerun.failed() == 0
+        rerun.complete()
+        targetArtifacts*.getString("_id").sort() == ["a1", "a2", "a3", "a4", "a5"]
+        // Skipped artifacts are recognised before their blob is uploaded again
+        targetBlobs.size() == 5
+    }
+
+    private Document artifact(String id, int size, int likeCount) {
+        byte[] blob = new byte[size]
+        new Random(id.hashCode()).nextBytes(blob)
+        ObjectId gridFsId = new ObjectId()
+        sourceBlobs[gridFsId] = blob
+        def download = Stub(GridFSDownloadStream)
+        download.readAllBytes() >> blob
+        downloads[gridFsId] = download
+
+        def artifact = new Document("_id", id)
+                .append("fileName", id + ".jpg")
+                .append("contentType", "image/jpeg")
+                .append("fileSize", (long) size)
+                .append("uploadDate", new Date(1_700_000_000_000L))
+                .append("gridFsId", gridFsId)
+                .append("likeCount", likeCount)
+                .append("likeVersion", (long) likeCount)
+        sourceArtifacts << artifact
+        return artifact
+    }
+
+    private Map export() {
+        def out = new ByteArrayOutputStream()
+        def result = service.exportCatalog(out)
+        return [result: result, archive: out.toByteArray()]
+    }
+
+    private static Document withoutGridFsId(Document artifact) {
+        def copy = new Document(artifact)
+        copy.remove("gridFsId")
+        return copy
+    }
+
+    // Copies an archive entry by entry; transform gets name, position and contents and returns null to drop the entry
+    private static byte[] rewrite(byte[] archive, Closure<byte[]> transform) {
+        def out = new ByteArrayOutputStream()
+        new ZipOutputStream(out).withCloseable { zip ->
+            def source = new ZipInputStream(new ByteArrayInputStream(archive))
+            ZipEntry entry
+            int index = 0
+            while ((entry = source.nextEntry) != null) {
+                byte[] data = transform(entry.name, index++, source.readAllBytes())
+                if (data != null) {
+                    zip.putNextEntry(new ZipEntry(entry.name))
+                    zip.write(data)
+                    zip.closeEntry()
+                }
+            }
+        }
+        return out.toByteArray()
+    }
+}
@@ -0,0 +1,112 @@
+package com.ben.file.cabinet.service.impl
+
+import com.ben.file.cabinet.model.Artifact
+import com.mongodb.MongoException
+import com.mongodb.client.gridfs.GridFSBucket
+import com.mongodb.client.gridfs.GridFSDownloadStream
+import org.bson.Document
+import org.bson.types.ObjectId
+import org.springframework.data.mongodb.core.MongoTemplate
+import org.springframework.data.mongodb.core.query.Query
+import org.springframework.data.mongodb.core.query.Update
+import spock.lang.Specification
+
+class ImageMetadataServiceImplSpec extends Specification {
+
+    ImageMetadataServiceImpl service = new ImageMetadataServiceImpl()
+    MongoTemplate mongoTemplate = Mock()
+    GridFSBucket gridFSBucket = Stub()
+
+    def setup() {
+        def artifact = new Artifact()
+        artifact.id = "a1"
+        artifact.gridFsId = new ObjectId()
+        mongoTemplate.findById("a1", Artifact) >> artifact
+
+        service.mongoTemplate = mongoTemplate
+        service.gridFSBucket = gridFSBucket
+        service.artifactCache = new ArtifactCache()
+    }
+
+    def "stores the displayed size, swapped for the orientations that rotate the image"() {
+        given: "a 40x20 landscape photo as the camera stored it"
+        gridFSBucket.openDownloadStream(_ as ObjectId) >> download(ImageUtilsSpec.jpeg(40, 20, orientation))
+        Document set = null
+
+        when:
+        boolean extracted = service.extract("a1")
+
+        then:
+        1 * mongoTemplate.updateFirst(_ as Query, _ as Update, Artifact) >> { Query query, Update update, Class type ->
+            set = update.updateObject.get('$set') as Document
+            return null
+        }
+        extracted
+        set.getInteger("width") == width
+        set.getInteger("height") == height
+        set.getInteger("orientation") == orientation
+        set.getBoolean("metadataExtracted")
+        // The first character is the component layout: 4x3 for landscape, 3x4 for portrait
+        set.getString("placeholder").charAt(0) == layout
+
+        where:
+        orientation | width | height | layout
+        1           | 40    | 20     | 'L' as char
+        3           | 40    | 20     | 'L' as char
+        5           | 20    | 40     | 'T' as char
+        6           | 20    | 40     | 'T' as char
+        8           | 20    | 40     | 'T' as char
+    }
+
+    def "marks a file that is not an image so the backfill does not retry it"() {
+        given:
+        gridFSBucket.openDownloadStream(_ as ObjectId) >> download("not an image".bytes)
+        Document set = null
+
+        when:
+        boolean extracted = service.extract("a1")
+
+        then:
+        1 * mongoTemplate.updateFirst(_ as Query, _ as Update, Artifact) >> { Query query, Update update, Class type ->
+            set = update.updateObject.get('$set') as Document
+            return null
+        }
+        !extracted
+        set == new Document("metadataExtracted", true)
+    }
+
+    def "leaves the artifact unmarked when GridFS cannot be reached, so the backfill retries it"() {
+        given:
+        gridFSBucket.openDownloadStream(_ as ObjectId) >> { throw new MongoException("connection pool timeout") }
+
+        when:
+        boolean extracted = service.extract("a1")
+
+        then:
+        !extracted
+        0 * mongoTemplate.updateFirst(*_)
+    }
+
+    def "leaves the artifact unmarked when the download fails part way"() {
+        given:
+        def stream = Stub(GridFSDownloadStream)
+        stream.read(_, _, _) >> { throw new IOException("connection reset") }
+        gridFSBucket.openDownloadStream(_ as ObjectId) >> stream
+
+        when:
+        boolean extracted = service.extract("a1")
+
+        then:
+        !extracted
+        0 * mongoTemplate.updateFirst(*_)
+    }
+
+    // GridFS download stream over the given bytes
+    private GridFSDownloadStream download(byte[] data) {
+        def source = new ByteArrayInputStream(data)
+        def stream = Stub(GridFSDownloadStream)
+        stream.read(_, _, _) >> { byte[] buffer, int offset, int length -> source.read(buffer, offset, length) }
+        stream.read() >> { source.read() }
+        return stream
+    }
+}
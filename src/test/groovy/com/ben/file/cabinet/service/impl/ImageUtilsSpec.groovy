@@ -0,0 +1,125 @@
+package com.ben.file.cabinet.service.impl
+
+import spock.lang.Specification
+
+import javax.imageio.ImageIO
+import java.awt.image.BufferedImage
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+
+class ImageUtilsSpec extends Specification {
+
+    static final int RED = 0xFF0000
+    static final int GREEN = 0x00FF00
+
+    def "reads the EXIF orientation in either byte order"() {
+        given:
+        byte[] data = jpeg(40, 20, orientation, littleEndian)
+
+        expect:
+        ImageUtils.readExifOrientation(data, data.length) == orientation
+
+        where:
+        [orientation, littleEndian] << [1..8, [false, true]].combinations()
+    }
+
+    def "falls back to orientation 1 without a complete EXIF entry"() {
+        expect:
+        ImageUtils.readExifOrientation(data, length) == 1
+
+        where: "no EXIF, not a JPEG, and a header cut off before or inside the orientation entry"
+        data            | length
+        jpeg(40, 20)    | data.length
+        png(40, 20)     | data.length
+        jpeg(40, 20, 6) | 40
+        jpeg(40, 20, 6) | 51
+    }
+
+    def "orients the stored pixels the way they are displayed"() {
+        given: "a landscape image with a red top-left and a green top-right corner"
+        def stored = new BufferedImage(40, 20, BufferedImage.TYPE_INT_RGB)
+        for (int y = 0; y < 20; y++) {
+            for (int x = 0; x < 40; x++) {
+                stored.setRGB(x, y, y < 8 && x < 8 ? RED : y < 8 && x >= 32 ? GREEN : 0xFFFFFF)
+            }
+        }
+
+        when:
+        def displayed = ImageUtils.orient(stored, orientation)
+
+        then:
+        displayed.width == width
+        displayed.height == height
+        corner(displayed, RED) == red
+        corner(displayed, GREEN) == green
+
+        where:
+        orientation | red  | green | width | height
+        1           | "TL" | "TR"  | 40    | 20
+        2           | "TR" | "TL"  | 40    | 20
+        3           | "BR" | "BL"  | 40    | 20
+        4           | "BL" | "BR"  | 40    | 20
+        5           | "TL" | "BL"  | 20    | 40
+        6           | "TR" | "BR"  | 20    | 40
+        7           | "BR" | "TR"  | 20    | 40
+        8           | "BL" | "TL"  | 20    | 40
+    }
+
+    def "encodes the same BlurHash as the reference encoder"() {
+        given:
+        def image = new BufferedImage(32, 24, BufferedImage.TYPE_INT_RGB)
+        for (int y = 0; y < 24; y++) {
+            for (int x = 0; x < 32; x++) {
+                int blue = ((x.intdiv(8) + y.intdiv(6)) % 2) * 200 + (x * y) % 40
+                image.setRGB(x, y, (x * 8) << 16 | (y * 10) << 8 | blue)
+            }
+        }
+
+        expect: "hashes of the same pixels from a port of the reference C encoder (github.com/woltapp/blurhash)"
+        BlurHash.encode(image, componentsX, componentsY) == hash
+
+        where:
+        componentsX | componentsY | hash
+        4           | 3           | "LxH27_2swwX8mHWTjtf3gIfjfQfk"
+        3           | 4           | "TxH27_2swwmHWTjtgIfjfQn,Wlju"
+    }
+
+    // A blank JPEG, with an APP1 segment carrying only the orientation tag inserted after the JFIF header
+    static byte[] jpeg(int width, int height, Integer orientation = null, boolean littleEndian = false) {
+        def out = new ByteArrayOutputStream()
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "jpg", out)
+        byte[] plain = out.toByteArray()
+        if (orientation == null) {
+            return plain
+        }
+
+        int app0End = 4 + ((plain[4] & 0xFF) << 8 | plain[5] & 0xFF)
+        def exif = ByteBuffer.allocate(36)
+        exif.putShort(0xFFE1 as short).putShort(34 as short)
+        exif.put("Exif".bytes).put(0 as byte).put(0 as byte)
+        exif.put((littleEndian ? "II" : "MM").bytes)
+        exif.order(littleEndian ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN)
+        exif.putShort(42 as short).putInt(8)
+        // One IFD entry: tag 0x0112, type SHORT, count 1, then no next IFD
+        exif.putShort(1 as short)
+        exif.putShort(0x0112 as short).putShort(3 as short).putInt(1).putShort(orientation as short).putShort(0 as short)
+        exif.putInt(0)
+
+        def withExif = new ByteArrayOutputStream()
+        withExif.write(plain, 0, app0End)
+        withExif.write(exif.array())
+        withExif.write(plain, app0End, plain.length - app0End)
+        return withExif.toByteArray()
+    }
+
+    static byte[] png(int width, int height) {
+        def out = new ByteArrayOutputStream()
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "png", out)
+        return out.toByteArray()
+    }
+
+    private static String corner(BufferedImage image, int rgb) {
+        def corners = [TL: [1, 1], TR: [image.width - 2, 1], BL: [1, image.height - 2], BR: [image.width - 2, image.height - 2]]
+        return corners.find { name, xy -> (image.getRGB(xy[0], xy[1]) & 0xFFFFFF) == rgb }?.key
+    }
+}
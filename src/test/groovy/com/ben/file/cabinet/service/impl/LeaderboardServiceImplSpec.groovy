@@ -0,0 +1,262 @@
+package com.ben.file.cabinet.service.impl
+
+import org.bson.Document
+import spock.lang.Specification
+import spock.lang.Timeout
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.CountDownLatch
+
+class LeaderboardServiceImplSpec extends Specification {
+
+    static final int CAPACITY = 10
+
+    LeaderboardServiceImpl leaderboard = new LeaderboardServiceImpl()
+
+    // What Mongo holds: every live artifact with its likeCount and likeVersion
+    Map<String, Integer> reference = new ConcurrentHashMap<>()
+    Map<String, Long> versions = new ConcurrentHashMap<>()
+
+    def setup() {
+        leaderboard.capacity = CAPACITY
+        rebuild()
+    }
+
+    def "serves pages in likeCount desc, id asc order while everything fits"() {
+        given:
+        apply("a", 3)
+        apply("b", 5)
+        apply("c", 3)
+
+        expect:
+        leaderboard.getTopLikedIds(0, 2) == ["b", "a"]
+        leaderboard.getTopLikedIds(1, 2) == ["c"]
+    }
+
+    def "evicts the lowest entry once over capacity and stops answering beyond what it holds"() {
+        given:
+        (0..CAPACITY).each { apply(id(it), it) }
+
+        expect: "the lowest ranked artifact is gone and the set is no longer complete"
+        !leaderboard.getTopLikedIds(0, CAPACITY).contains(id(0))
+        leaderboard.getTopLikedIds(0, CAPACITY) == expected(0, CAPACITY)
+        leaderboard.getTopLikedIds(1, CAPACITY) == null
+        invariantHolds()
+    }
+
+    def "an artifact dropping below the last entry leaves the set instead of keeping a stale rank"() {
+        given:
+        (0..CAPACITY).each { apply(id(it), it + 10) }
+
+        when: "the top artifact loses all its likes"
+        apply(id(CAPACITY), 0)
+
+        then:
+        !leaderboard.getTopLikedIds(0, CAPACITY - 1).contains(id(CAPACITY))
+        invariantHolds()
+    }
+
+    def "an artifact rising from outside the set is admitted at its new rank"() {
+        given:
+        (0..CAPACITY).each { apply(id(it), it + 10) }
+
+        when: "the evicted artifact overtakes everything"
+        apply(id(0), 100)
+
+        then:
+        leaderboard.getTopLikedIds(0, 1) == [id(0)]
+        invariantHolds()
+    }
+
+    def "a rebuild restores every page the evictions had given up"() {
+        given:
+        (0..CAPACITY).each { apply(id(it), it + 10) }
+        (1..CAPACITY).each { apply(id(it), 0) }
+
+        expect:
+        leaderboard.getTopLikedIds(0, 1) == null
+
+        when:
+        rebuild()
+
+        then:
+        leaderboard.getTopLikedIds(0, CAPACITY) == expected(0, CAPACITY)
+        invariantHolds()
+    }
+
+    def "a count that arrives after a newer one is ignored"() {
+        given:
+        apply("a", 1)
+        apply("b", 2)
+
+        when: "two likes on a are written, and the leaderboard hears about the second one first"
+        leaderboard.update("a", 3, 3)
+        leaderboard.update("a", 2, 2)
+
+        then:
+        leaderboard.getTopLikedIds(0, 2) == ["a", "b"]
+        leaderboard.counts["a"] == 3
+    }
+
+    def "a like that raced a delete does not bring the artifact back"() {
+        given:
+        apply("a", 1)
+
+        when:
+        leaderboard.remove("a")
+        leaderboard.update("a", 2, 5)
+
+        then:
+        leaderboard.getTopLikedIds(0, 10) == []
+    }
+
+    def "removed artifacts disappear from every page"() {
+        given:
+        (0..<5).each { apply(id(it), it) }
+
+        when:
+        leaderboard.remove(id(4))
+        reference.remove(id(4))
+
+        then:
+        leaderboard.getTopLikedIds(0, 10) == [id(3), id(2), id(1), id(0)]
+    }
+
+    def "stays consistent with the database through a random mix of likes, unlikes, uploads and deletes"() {
+        given:
+        def random = new Random(seed)
+        int uploaded = CAPACITY * 3
+        (0..<uploaded).each { apply(id(it), random.nextInt(20)) }
+
+        when:
+        10_000.times {
+            int operation = random.nextInt(10)
+            List<String> live = reference.keySet().sort()
+            if (operation == 0 && !live.isEmpty()) {
+                String artifactId = live[random.nextInt(live.size())]
+                leaderboard.remove(artifactId)
+                reference.remove(artifactId)
+            } else if (operation == 1 || live.isEmpty()) {
+                // Artifact ids are never reused after a delete
+                apply(id(uploaded++), 0)
+            } else {
+                String artifactId = live[random.nextInt(live.size())]
+                int delta = operation < 6 ? 1 : -1
+                apply(artifactId, Math.max(0, reference[artifactId] + delta))
+            }
+            assert invariantHolds()
+            // What the scheduled refill does once evictions have halved the set
+            if (!leaderboard.complete && leaderboard.counts.size() < CAPACITY / 2) {
+                rebuild()
+            }
+        }
+
+        then:
+        invariantHolds()
+
+        where:
+        seed << [1L, 7L, 42L]
+    }
+
+    @Timeout(60)
+    def "readers always see a full first page while likes arrive out of order and rebuilds run concurrently"() {
+        given: "a catalog that fits in memory, so every page is served from the leaderboard"
+        leaderboard.capacity = 1000
+        int writers = 4
+        int artifactsPerWriter = 50
+        (0..<writers * artifactsPerWriter).each { apply(id(it), 0) }
+        rebuild()
+
+        def failures = new ConcurrentLinkedQueue<String>()
+        def done = new CountDownLatch(writers)
+        def threads = []
+
+        when: "writers share the artifacts and hand each count over after the write, with no lock between the two"
+        writers.times { w ->
+            threads << Thread.start {
+                def random = new Random(w)
+                5_000.times {
+                    String artifactId = id(random.nextInt(writers * artifactsPerWriter))
+                    int likeCount
+                    long version
+                    synchronized (reference) {
+                        likeCount = Math.max(0, reference[artifactId] + (random.nextBoolean() ? 1 : -1))
+                        reference[artifactId] = likeCount
+                        version = versions.merge(artifactId, 1L, Long::sum)
+                    }
+                    leaderboard.update(artifactId, likeCount, version)
+                }
+                done.countDown()
+            }
+        }
+        threads << Thread.start {
+            while (done.count > 0) {
+                // What rebuild() does around its Mongo query
+                leaderboard.setRecording(true)
+                List<Document> snapshot
+                synchronized (reference) {
+                    snapshot = documents(leaderboard.capacity + 1)
+                }
+                leaderboard.load(snapshot)
+            }
+        }
+        2.times {
+            threads << Thread.start {
+                while (done.count > 0) {
+                    def ids = leaderboard.getTopLikedIds(0, 20)
+                    if (ids == null || ids.size() != 20 || ids.toSet().size() != 20) {
+                        failures << String.valueOf(ids)
+                    }
+                }
+            }
+        }
+        threads*.join()
+
+        then:
+        failures.isEmpty()
+        leaderboard.getTopLikedIds(0, writers * artifactsPerWriter) == expected(0, writers * artifactsPerWriter)
+    }
+
+    // Each like change reaches the leaderboard after its write, the way ArtifactServiceImpl applies it
+    private void apply(String artifactId, int likeCount) {
+        reference[artifactId] = likeCount
+        leaderboard.update(artifactId, likeCount, versions.merge(artifactId, 1L, Long::sum))
+    }
+
+    // Loads what LeaderboardServiceImpl.rebuild() would read from the likeCount index
+    private void rebuild() {
+        leaderboard.load(documents(leaderboard.capacity + 1))
+    }
+
+    private List<Document> documents(int limit) {
+        return expected(0, limit).collect {
+            new Document("_id", it).append("likeCount", reference[it]).append("likeVersion", versions[it])
+        }
+    }
+
+    private boolean invariantHolds() {
+        int held = leaderboard.counts.size()
+        // Whatever the set holds must be exactly the top of the database ordering
+        assert leaderboard.getTopLikedIds(0, held) == expected(0, held)
+        for (int size in [1, 3, 4]) {
+            for (int page = 0; page * size <= reference.size(); page++) {
+                def ids = leaderboard.getTopLikedIds(page, size)
+                assert ids == null || ids == expected(page, size)
+            }
+        }
+        return true
+    }
+
+    private List<String> expected(int page, int size) {
+        def ordered = reference.entrySet()
+                .sort { a, b -> b.value <=> a.value ?: a.key <=> b.key }
+                .collect { it.key }
+        int from = Math.min(page * size, ordered.size())
+        return ordered.subList(from, Math.min(from + size, ordered.size()))
+    }
+
+    private static String id(int i) {
+        return String.format("%024x", i)
+    }
+}
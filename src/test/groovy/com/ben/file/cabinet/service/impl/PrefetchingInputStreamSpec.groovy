@@ -0,0 +1,74 @@
+package com.ben.file.cabinet.service.impl
+
+import spock.lang.AutoCleanup
+import spock.lang.Specification
+import spock.lang.Timeout
+
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+
+class PrefetchingInputStreamSpec extends Specification {
+
+    @AutoCleanup('shutdownNow')
+    ExecutorService executor = Executors.newCachedThreadPool()
+
+    def "returns every byte of the source in order"() {
+        given:
+        byte[] data = (0..<10_000).collect { (byte) it } as byte[]
+        def stream = new PrefetchingInputStream(new ByteArrayInputStream(data), 1024, 2, executor)
+
+        expect:
+        stream.readAllBytes() == data
+    }
+
+    def "reports a source failure once the data before it has been read"() {
+        given:
+        def source = new InputStream() {
+            int position
+
+            @Override
+            int read() throws IOException {
+                if (position++ < 100) {
+                    return 1
+                }
+                throw new IOException("boom")
+            }
+        }
+        def stream = new PrefetchingInputStream(source, 10, 2, executor)
+
+        when:
+        stream.readAllBytes()
+
+        then:
+        def e = thrown(IOException)
+        e.message == "boom"
+    }
+
+    @Timeout(10)
+    def "a reader that gave up on a slow consumer ends the stream with an error instead of blocking it"() {
+        given:
+        byte[] data = new byte[10 * 1024]
+        def stream = new PrefetchingInputStream(new ByteArrayInputStream(data), 1024, 1, executor, 200)
+
+        when: "the consumer stalls longer than the reader waits for it"
+        stream.read(new byte[1024])
+        Thread.sleep(600)
+        stream.readAllBytes()
+
+        then:
+        def e = thrown(IOException)
+        e.message.contains("stalled")
+    }
+
+    def "reading after close fails"() {
+        given:
+        def stream = new PrefetchingInputStream(new ByteArrayInputStream(new byte[4096]), 1024, 2, executor)
+        stream.close()
+
+        when:
+        stream.read()
+
+        then:
+        thrown(IOException)
+    }
+}
@@ -0,0 +1,216 @@
+package com.ben.file.cabinet.service.impl
+
+import com.ben.file.cabinet.model.Artifact
+import com.ben.file.cabinet.model.Profile
+import com.mongodb.client.gridfs.GridFSBucket
+import org.bson.Document
+import org.bson.types.ObjectId
+import org.springframework.data.mongodb.core.MongoTemplate
+import org.springframework.data.mongodb.core.query.Query
+import spock.lang.Specification
+
+import java.time.Instant
+import java.time.LocalDateTime
+import java.time.temporal.ChronoUnit
+
+class StorageGcServiceImplSpec extends Specification {
+
+    static final String FILES = "artifact.files"
+    static final String CHUNKS = "artifact.chunks"
+
+    StorageGcServiceImpl gc = new StorageGcServiceImpl()
+
+    // What Mongo holds; the stubbed MongoTemplate evaluates each query against these
+    List<Document> files = []
+    List<Document> chunks = []
+    List<Artifact> artifacts = []
+    List<Profile> profiles = []
+
+    def setup() {
+        MongoTemplate mongoTemplate = Stub()
+        mongoTemplate.find(_ as Query, Document, FILES) >> { Query query, Class type, String collection -> select(files, query) }
+        mongoTemplate.findOne(_ as Query, Document, CHUNKS) >> { Query query, Class type, String collection ->
+            select(chunks, query).find()
+        }
+        mongoTemplate.remove(_ as Query, CHUNKS) >> { Query query, String collection ->
+            chunks.removeAll(select(chunks, query))
+            return null
+        }
+        mongoTemplate.find(_ as Query, Artifact) >> { Query query, Class type -> select(artifacts, query) }
+        mongoTemplate.remove(_ as Query, Artifact) >> { Query query, Class type ->
+            artifacts.removeAll(select(artifacts, query))
+            return null
+        }
+        mongoTemplate.find(_ as Query, Profile) >> { Query query, Class type -> select(profiles, query) }
+
+        GridFSBucket gridFSBucket = Stub()
+        gridFSBucket.delete(_ as ObjectId) >> { ObjectId id ->
+            files.removeIf { it.get("_id") == id }
+            chunks.removeIf { it.get("files_id") == id }
+        }
+
+        gc.mongoTemplate = mongoTemplate
+        gc.gridFSBucket = gridFSBucket
+        gc.blobCache = new BlobCache()
+        gc.bucketName = "artifact"
+        // Small batches, so every case also walks across batch boundaries
+        gc.batchSize = 2
+        gc.batchPauseMillis = 0
+        gc.orphanGraceMinutes = 60
+    }
+
+    def "keeps files inside the grace period and removes older unreferenced ones"() {
+        given:
+        def recent = file(0)
+        3.times { file(2) }
+
+        when:
+        int removed = gc.collectOrphanFiles()
+
+        then:
+        removed == 3
+        fileIds() == [recent] as Set
+        chunks*.get("files_id") as Set == [recent] as Set
+    }
+
+    def "keeps files referenced by an artifact, including artifacts marked deleted"() {
+        given:
+        def live = file(2)
+        def deleted = file(2)
+        3.times { file(2) }
+        artifact(live, null)
+        artifact(deleted, LocalDateTime.now().minusMinutes(1))
+
+        when:
+        int removed = gc.collectOrphanFiles()
+
+        then:
+        removed == 3
+        fileIds() == [live, deleted] as Set
+    }
+
+    def "keeps a profile's current avatar and the variants rendered from it"() {
+        given:
+        def avatar = file(2)
+        def variant = file(2, avatar.toHexString())
+        def replacedAvatar = file(2)
+        file(2, replacedAvatar.toHexString())
+        profile(avatar.toHexString())
+
+        when:
+        int removed = gc.collectOrphanFiles()
+
+        then:
+        removed == 2
+        fileIds() == [avatar, variant] as Set
+    }
+
+    def "removes chunks whose file is gone, keeping those of existing files and of uploads in progress"() {
+        given:
+        def existing = file(2)
+        def missing = new ObjectId(hoursAgo(2))
+        def uploading = new ObjectId()
+        chunk(missing, 0)
+        chunk(missing, 1)
+        chunk(uploading, 0)
+
+        when:
+        int removed = gc.collectOrphanChunks()
+
+        then:
+        removed == 1
+        chunks*.get("files_id") as Set == [existing, uploading] as Set
+        chunks.count { it.get("files_id") == existing } == 2
+    }
+
+    def "purges artifacts past their deletedDate together with their files"() {
+        given:
+        def live = file(2)
+        def deleted = (1..3).collect { file(2) }
+        artifact(live, null)
+        deleted.each { artifact(it, LocalDateTime.now().minusMinutes(1)) }
+
+        when:
+        int purged = gc.purgeDeletedArtifacts()
+
+        then:
+        purged == 3
+        artifacts*.gridFsId == [live]
+        fileIds() == [live] as Set
+    }
+
+    private ObjectId file(int hours, String avatarSource = null) {
+        Date uploaded = hoursAgo(hours)
+        ObjectId id = new ObjectId(uploaded)
+        Document file = new Document("_id", id).append("uploadDate", uploaded)
+        if (avatarSource != null) {
+            file.append("metadata", new Document("avatarSource", avatarSource))
+        }
+        files << file
+        chunk(id, 0)
+        chunk(id, 1)
+        return id
+    }
+
+    private void chunk(ObjectId fileId, int n) {
+        chunks << new Document("files_id", fileId).append("n", n)
+    }
+
+    private void artifact(ObjectId gridFsId, LocalDateTime deletedDate) {
+        def artifact = new Artifact()
+        artifact.id = UUID.randomUUID().toString()
+        artifact.gridFsId = gridFsId
+        artifact.deletedDate = deletedDate
+        artifacts << artifact
+    }
+
+    private void profile(String avatarId) {
+        def profile = new Profile()
+        profile.id = UUID.randomUUID().toString()
+        profile.avatarId = avatarId
+        profiles << profile
+    }
+
+    private Set<ObjectId> fileIds() {
+        return files.collect { it.get("_id") as ObjectId } as Set
+    }
+
+    private static Date hoursAgo(int hours) {
+        return Date.from(Instant.now().minus(hours, ChronoUnit.HOURS))
+    }
+
+    // Enough of Mongo's query semantics for the queries the GC issues: equality, $in, $gt and $lte,
+    // a single ascending sort key and a limit
+    private static <T> List<T> select(List<T> items, Query query) {
+        Document criteria = query.queryObject
+        List<T> matching = items.findAll { item ->
+            criteria.every { String field, Object condition -> matches(value(item, field), condition) }
+        }
+        if (!query.sortObject.isEmpty()) {
+            String key = query.sortObject.keySet().first()
+            matching.sort { value(it, key) }
+        }
+        return query.limit > 0 ? matching.take(query.limit) : matching
+    }
+
+    private static boolean matches(Object actual, Object condition) {
+        if (!(condition instanceof Document)) {
+            return actual == condition
+        }
+        return condition.every { String operator, Object operand ->
+            switch (operator) {
+                case '$in': return (operand as Collection).contains(actual)
+                case '$gt': return actual != null && actual > operand
+                case '$lte': return actual != null && actual <= operand
+                default: throw new IllegalArgumentException("Unsupported operator " + operator)
+            }
+        }
+    }
+
+    private static Object value(Object item, String field) {
+        if (item instanceof Document) {
+            return item.get(field)
+        }
+        return item[field == "_id" ? "id" : field]
+    }
+}
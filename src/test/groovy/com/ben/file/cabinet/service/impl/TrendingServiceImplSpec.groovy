@@ -0,0 +1,150 @@
+package com.ben.file.cabinet.service.impl
+
+import spock.lang.Specification
+
+class TrendingServiceImplSpec extends Specification {
+
+    static final double HALF_LIFE_MINUTES = 60
+
+    TrendingServiceImpl trending = new TrendingServiceImpl()
+
+    def setup() {
+        trending.halfLifeMinutes = HALF_LIFE_MINUTES
+        trending.rankedSize = 1000
+        trending.minScore = 0.01
+    }
+
+    def "ranks by decayed score, so a recent like outweighs older ones"() {
+        given:
+        3.times { trending.recordLike("a", 1) }
+        age(2)
+        trending.recordLike("b", 1)
+
+        when:
+        trending.refresh()
+
+        then:
+        trending.getPage(null, 0, 10).artifactIds() == ["b", "a"]
+        score("a") == 0.75d
+        score("b") == 1d
+    }
+
+    def "rescaling at refresh leaves every score at its decayed sum"() {
+        given:
+        trending.recordLike("a", 1)
+
+        when:
+        trending.refresh()
+
+        then:
+        score("a") == 1d
+
+        when: "a half-life passes"
+        age(1)
+        trending.refresh()
+
+        then:
+        score("a") == 0.5d
+        Math.abs(trending.epochMillis - System.currentTimeMillis()) < 1000
+
+        when: "a like after the rescale adds at full weight"
+        trending.recordLike("a", 1)
+        trending.refresh()
+
+        then:
+        score("a") == 1.5d
+    }
+
+    def "unlikes are subtracted at the weight of their own time"() {
+        given:
+        2.times { trending.recordLike("a", 1) }
+        age(1)
+        trending.refresh()
+
+        when:
+        trending.recordLike("a", -1)
+        trending.refresh()
+
+        then: "two likes a half-life ago leave one like's worth, then the unlike takes it away"
+        !trending.scores.containsKey("a")
+        trending.getPage(null, 0, 10).artifactIds().isEmpty()
+    }
+
+    def "drops artifacts whose score has decayed below min-score"() {
+        given:
+        trending.recordLike("old", 1)
+        age(1)
+        trending.recordLike("recent", 1)
+        age(6)
+
+        when:
+        trending.refresh()
+
+        then: "2^-7 is below 0.01, 2^-6 is not"
+        !trending.scores.containsKey("old")
+        trending.getPage(null, 0, 10).artifactIds() == ["recent"]
+    }
+
+    def "ranks only the top size artifacts but keeps scoring the rest"() {
+        given:
+        trending.rankedSize = 5
+        (1..20).each { likes -> likes.times { trending.recordLike(id(likes), 1) } }
+
+        when:
+        trending.refresh()
+        def page = trending.getPage(null, 0, 100)
+
+        then:
+        page.artifactIds() == (20..16).collect { id(it) }
+        page.totalCount() == 5
+        page.nextCursor() == null
+        trending.scores.size() == 20
+    }
+
+    def "a cursor keeps paging the snapshot it started on across the next refresh"() {
+        given:
+        ["a", "b", "c", "d"].eachWithIndex { artifactId, rank -> (4 - rank).times { trending.recordLike(artifactId, 1) } }
+        trending.refresh()
+        def first = trending.getPage(null, 0, 2)
+
+        when: "d overtakes everything and the ranking is refreshed mid-scroll"
+        10.times { trending.recordLike("d", 1) }
+        trending.refresh()
+
+        then:
+        first.artifactIds() == ["a", "b"]
+        trending.getPage(first.nextCursor(), 0, 2).artifactIds() == ["c", "d"]
+        trending.getPage(null, 0, 2).artifactIds() == ["d", "a"]
+
+        when: "the snapshot the cursor came from is no longer kept"
+        trending.refresh()
+
+        then: "the cursor continues at the same position of the current ranking"
+        trending.getPage(first.nextCursor(), 0, 2).artifactIds() == ["b", "c"]
+    }
+
+    def "rejects a malformed cursor"() {
+        when:
+        trending.getPage(cursor, 0, 10)
+
+        then:
+        thrown(IllegalArgumentException)
+
+        where:
+        cursor << ["1", "x:2", "1:y", "1:2:3"]
+    }
+
+    // Moves the decay epoch back, which ages every like recorded so far by that many half-lives
+    private void age(double halfLives) {
+        trending.epochMillis -= (long) (halfLives * HALF_LIFE_MINUTES * 60_000)
+    }
+
+    // Rounded, the few milliseconds a test takes are a negligible fraction of a half-life
+    private double score(String artifactId) {
+        return Math.round(trending.scores[artifactId] * 1000) / 1000d
+    }
+
+    private static String id(int i) {
+        return String.format("artifact-%02d", i)
+    }
+}
@@ -0,0 +1,206 @@
+package com.ben.file.cabinet.web
+
+import jakarta.servlet.DispatcherType
+import jakarta.servlet.http.HttpServletRequest
+import jakarta.servlet.http.HttpServletResponse
+import org.springframework.core.env.StandardEnvironment
+import org.springframework.web.method.HandlerMethod
+import spock.lang.Specification
+import spock.lang.Timeout
+
+import java.util.concurrent.TimeUnit
+
+class AdaptiveConcurrencyLimiterSpec extends Specification {
+
+    def "grows towards the max limit while latency stays at its baseline"() {
+        given:
+        def limiter = new AdaptiveConcurrencyLimiter(20, 100, 0, 0)
+
+        when:
+        saturate(limiter, 10, 30)
+
+        then:
+        limiter.snapshot().limit == 100
+    }
+
+    def "shrinks when recent requests are slower than the baseline"() {
+        given:
+        def limiter = new AdaptiveConcurrencyLimiter(20, 100, 0, 0)
+        saturate(limiter, 10, 30)
+
+        when: "latency jumps tenfold, e.g. requests queueing for Mongo connections"
+        saturate(limiter, 100, 1)
+
+        then:
+        limiter.snapshot().limit < 20
+        limiter.snapshot().limit >= 1
+
+        when: "latency recovers"
+        saturate(limiter, 10, 30)
+
+        then:
+        limiter.snapshot().limit == 100
+    }
+
+    def "does not adapt while most of the limit is unused"() {
+        given:
+        def limiter = new AdaptiveConcurrencyLimiter(20, 100, 0, 0)
+
+        when: "one request at a time, fast and then slow"
+        50.times { oneRequest(limiter, 10) }
+        50.times { oneRequest(limiter, 100) }
+
+        then:
+        limiter.snapshot().limit == 20
+    }
+
+    @Timeout(10)
+    def "rejects straight away once the queue is full"() {
+        given:
+        def limiter = new AdaptiveConcurrencyLimiter(1, 1, 1, 5000)
+        limiter.tryAcquire()
+        boolean queuedResult = false
+        def queued = Thread.start { queuedResult = limiter.tryAcquire() }
+        waitUntil { limiter.isBacklogged() }
+
+        when:
+        long start = System.nanoTime()
+        boolean admitted = limiter.tryAcquire()
+        long waitedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+
+        then:
+        !admitted
+        waitedMillis < 1000
+
+        when: "the permit is released"
+        limiter.release(TimeUnit.MILLISECONDS.toNanos(10))
+        queued.join()
+
+        then: "the queued request gets it"
+        queuedResult
+        limiter.snapshot().admitted == 2
+        limiter.snapshot().rejected == 1
+    }
+
+    @Timeout(10)
+    def "rejects a queued request once it has waited max-wait-ms"() {
+        given:
+        def limiter = new AdaptiveConcurrencyLimiter(1, 1, 5, 200)
+        limiter.tryAcquire()
+
+        when:
+        long start = System.nanoTime()
+        boolean admitted = limiter.tryAcquire()
+        long waitedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+
+        then:
+        !admitted
+        waitedMillis >= 150
+        !limiter.isBacklogged()
+    }
+
+    @Timeout(10)
+    def "sheds other classes while feed requests are queueing"() {
+        given:
+        def interceptor = interceptor()
+        def feed = new AdaptiveConcurrencyLimiter(1, 1, 10, 5000)
+        interceptor.limiters[EndpointClass.FEED] = feed
+        feed.tryAcquire()
+        def queuedFeed = Thread.start { feed.tryAcquire() }
+        waitUntil { feed.isBacklogged() }
+        def response = Mock(HttpServletResponse)
+
+        when:
+        boolean admitted = interceptor.preHandle(request(), response, handler("download"))
+
+        then:
+        !admitted
+        1 * response.setStatus(503)
+        1 * response.setHeader("Retry-After", "1")
+        1 * response.getWriter() >> new PrintWriter(new StringWriter())
+        interceptor.limiters[EndpointClass.DOWNLOAD].snapshot().shed == 1
+
+        when: "the feed backlog drains"
+        feed.release(TimeUnit.MILLISECONDS.toNanos(10))
+        queuedFeed.join()
+
+        then:
+        interceptor.preHandle(request(), Mock(HttpServletResponse), handler("download"))
+    }
+
+    def "releases the permit with the latency up to the body write"() {
+        given:
+        def interceptor = interceptor()
+        def request = Mock(HttpServletRequest)
+        def attributes = [:]
+        request.getDispatcherType() >> DispatcherType.REQUEST
+        request.setAttribute(_, _) >> { String name, Object value -> attributes[name] = value }
+        request.getAttribute(_) >> { String name -> attributes[name] }
+        request.removeAttribute(_) >> { String name -> attributes.remove(name) }
+
+        when:
+        interceptor.preHandle(request, Mock(HttpServletResponse), handler("download"))
+        // Handled 5 ms after admission, the body then takes much longer to reach the client
+        attributes[AdmissionControlInterceptor.HANDLED_ATTRIBUTE] = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(5)
+        Thread.sleep(200)
+        interceptor.afterCompletion(request, Mock(HttpServletResponse), handler("download"), null)
+
+        then:
+        def download = interceptor.limiters[EndpointClass.DOWNLOAD].snapshot()
+        download.inFlight == 0
+        download.shortRttMillis < 100
+    }
+
+    // Fills the limit, then releases every permit with the given latency, for a number of rounds
+    private static void saturate(AdaptiveConcurrencyLimiter limiter, long rttMillis, int rounds) {
+        rounds.times {
+            int acquired = 0
+            while (limiter.tryAcquire()) {
+                acquired++
+            }
+            acquired.times { limiter.release(TimeUnit.MILLISECONDS.toNanos(rttMillis)) }
+        }
+    }
+
+    private static void oneRequest(AdaptiveConcurrencyLimiter limiter, long rttMillis) {
+        assert limiter.tryAcquire()
+        limiter.release(TimeUnit.MILLISECONDS.toNanos(rttMillis))
+    }
+
+    private static void waitUntil(Closure<Boolean> condition) {
+        while (!condition()) {
+            Thread.sleep(5)
+        }
+    }
+
+    private static AdmissionControlInterceptor interceptor() {
+        def interceptor = new AdmissionControlInterceptor()
+        interceptor.environment = new StandardEnvironment()
+        interceptor.enabled = true
+        interceptor.retryAfterSeconds = 1
+        interceptor.init()
+        return interceptor
+    }
+
+    private HttpServletRequest request() {
+        def request = Stub(HttpServletRequest)
+        request.getDispatcherType() >> DispatcherType.REQUEST
+        return request
+    }
+
+    private static HandlerMethod handler(String name) {
+        def handlers = new Handlers()
+        return new HandlerMethod(handlers, Handlers.getMethod(name))
+    }
+
+    static class Handlers {
+
+        @Admission(EndpointClass.FEED)
+        void feed() {
+        }
+
+        @Admission(EndpointClass.DOWNLOAD)
+        void download() {
+        }
+    }
+}
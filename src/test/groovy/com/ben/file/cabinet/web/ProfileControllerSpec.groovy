@@ -0,0 +1,145 @@
+package com.ben.file.cabinet.web
+
+import com.ben.file.cabinet.model.Profile
+import com.ben.file.cabinet.service.impl.ProfileServiceImpl
+import com.fasterxml.jackson.databind.ObjectMapper
+import groovy.transform.CompileStatic
+import jakarta.servlet.ServletOutputStream
+import jakarta.servlet.WriteListener
+import jakarta.servlet.http.HttpServletResponse
+import org.bson.Document
+import org.springframework.data.mongodb.core.MongoTemplate
+import org.springframework.data.mongodb.core.query.Query
+import spock.lang.Specification
+
+import java.util.stream.Stream
+
+class ProfileControllerSpec extends Specification {
+
+    static final int PROFILES = 3_000_000
+    static final long MAX_HEAP_GROWTH = 32 * 1024 * 1024
+
+    // The Mongo cursor is stood in for by a lazy Stream; the controller and service are the real ones
+    MongoTemplate mongoTemplate = Stub()
+    ProfileServiceImpl profileService = new ProfileServiceImpl()
+    ProfileController controller = new ProfileController()
+    Query streamQuery
+
+    def setup() {
+        profileService.mongoTemplate = mongoTemplate
+        controller.profileService = profileService
+        controller.objectMapper = new ObjectMapper()
+    }
+
+    def "streams three million profiles without the heap growing with the number of profiles"() {
+        given: "a lazily generated cursor that samples the heap as it goes"
+        long baseline = usedHeapAfterGc()
+        long peak = baseline
+        cursor(Stream.iterate(0, { it + 1 }).limit(PROFILES).map { int i ->
+            if (i > 0 && i % 250_000 == 0) {
+                peak = Math.max(peak, usedHeapAfterGc())
+            }
+            profile(i)
+        })
+        def out = new CountingOutputStream()
+        def response = Stub(HttpServletResponse) {
+            getOutputStream() >> out
+        }
+
+        when:
+        controller.stream(response)
+
+        then:
+        out.lines == PROFILES
+        peak - baseline < MAX_HEAP_GROWTH
+
+        and: "the service walks the collection in _id order, a bounded batch per round trip"
+        streamQuery.sortObject == new Document("_id", 1)
+        streamQuery.meta.cursorBatchSize == 500
+    }
+
+    def "writes one JSON document per line"() {
+        given:
+        cursor(Stream.of(profile(1), profile(2)))
+        def out = new CountingOutputStream(keep: true)
+        def response = Stub(HttpServletResponse) {
+            getOutputStream() >> out
+        }
+
+        when:
+        controller.stream(response)
+        def lines = out.text.readLines()
+
+        then:
+        lines.size() == 2
+        new ObjectMapper().readValue(lines[1], Profile).id == "profile-2"
+    }
+
+    // Answers the service's mongoTemplate.stream call, recording the query it was opened with
+    private void cursor(Stream<Profile> profiles) {
+        mongoTemplate.stream(_ as Query, Profile) >> { Query query, Class type ->
+            streamQuery = query
+            return profiles
+        }
+    }
+
+    private static Profile profile(int i) {
+        def profile = new Profile()
+        profile.id = "profile-" + i
+        profile.displayName = "User " + i
+        profile.email = "user" + i + "@example.com"
+        profile.avatarId = Integer.toHexString(i).padLeft(24, "0")
+        return profile
+    }
+
+    private static long usedHeapAfterGc() {
+        def runtime = Runtime.getRuntime()
+        2.times { System.gc() }
+        return runtime.totalMemory() - runtime.freeMemory()
+    }
+
+    // Discards what is written, counting newlines; optionally keeps the bytes for small responses
+    @CompileStatic
+    static class CountingOutputStream extends ServletOutputStream {
+        static final int NEWLINE = 10
+
+        boolean keep
+        long lines
+        ByteArrayOutputStream kept = new ByteArrayOutputStream()
+
+        @Override
+        void write(int b) {
+            if (b == NEWLINE) {
+                lines++
+            }
+            if (keep) {
+                kept.write(b)
+            }
+        }
+
+        @Override
+        void write(byte[] buffer, int offset, int length) {
+            for (int i = offset; i < offset + length; i++) {
+                if (buffer[i] == NEWLINE) {
+                    lines++
+                }
+            }
+            if (keep) {
+                kept.write(buffer, offset, length)
+            }
+        }
+
+        String getText() {
+            return kept.toString("UTF-8")
+        }
+
+        @Override
+        boolean isReady() {
+            return true
+        }
+
+        @Override
+        void setWriteListener(WriteListener writeListener) {
+        }
+    }
+}
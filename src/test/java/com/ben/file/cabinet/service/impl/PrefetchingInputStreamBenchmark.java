@@ -0,0 +1,158 @@
+package com.ben.file.cabinet.service.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Micro benchmark for the download read-ahead, no Mongo needed: the source pays a fixed latency
+ * per GridFS chunk (the round trip for the next batch of chunk documents) and the consumer pays
+ * a fixed latency per block of bytes written (the client draining the socket). Without read-ahead
+ * the two add up; with it a download should approach the slower of the two.
+ *
+ * Every file shape is run against every source latency, from a single chunk file that read-ahead
+ * cannot help to a large file stored with the bigger chunks of GridFsChunkSizePolicy.
+ *
+ * Run with ./gradlew benchmark
+ */
+public class PrefetchingInputStreamBenchmark {
+
+    private static final int DEFAULT_CHUNK = 255 * 1024;
+    private static final int LARGE_CHUNK = 1024 * 1024;
+
+    private static final List<FileShape> FILES = List.of(
+            new FileShape("single chunk", 200 * 1024, DEFAULT_CHUNK),
+            new FileShape("1 MB", 1024 * 1024, DEFAULT_CHUNK),
+            new FileShape("10 MB", 10 * 1024 * 1024, DEFAULT_CHUNK),
+            new FileShape("10 MB, 1 MB chunks", 10 * 1024 * 1024, LARGE_CHUNK));
+    private static final long[] SOURCE_LATENCIES_MS = {1, 4, 10};
+    private static final int[] DEPTHS = {1, 2, 4, 8};
+
+    // The client drains at a fixed rate whatever the chunk size: one pause per block written
+    private static final int CONSUMER_BLOCK = 255 * 1024;
+    private static final long CONSUMER_LATENCY_MS = 4;
+    private static final int COPY_BUFFER = 8192;
+    private static final int WARMUP_RUNS = 2;
+    private static final int MEASURED_RUNS = 7;
+
+    public static void main(String[] args) throws Exception {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            System.out.printf("%d ms per %d KB written, median of %d runs%n%n",
+                    CONSUMER_LATENCY_MS, CONSUMER_BLOCK / 1024, MEASURED_RUNS);
+            System.out.printf("%-20s %-9s %-18s %8s %8s %8s %9s %8s%n",
+                    "file", "source", "stream", "median", "min", "max", "MB/s", "speedup");
+            for (FileShape file : FILES) {
+                for (long sourceLatency : SOURCE_LATENCIES_MS) {
+                    long[] plain = measure(file, () -> new LatencyInputStream(file, sourceLatency));
+                    report(file, sourceLatency, "plain", plain, plain);
+                    for (int depth : DEPTHS) {
+                        report(file, sourceLatency, "prefetch depth " + depth, measure(file, () ->
+                                new PrefetchingInputStream(new LatencyInputStream(file, sourceLatency),
+                                        file.chunkSize(), depth, executor)), plain);
+                    }
+                    System.out.println();
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static long[] measure(FileShape file, StreamFactory factory) throws IOException, InterruptedException {
+        long[] millis = new long[MEASURED_RUNS];
+        for (int run = 0; run < WARMUP_RUNS + MEASURED_RUNS; run++) {
+            long start = System.nanoTime();
+            try (InputStream in = factory.open()) {
+                consume(in, file.size());
+            }
+            if (run >= WARMUP_RUNS) {
+                millis[run - WARMUP_RUNS] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            }
+        }
+        Arrays.sort(millis);
+        return millis;
+    }
+
+    // Copies like the resource message converter does, sleeping once per block written
+    private static void consume(InputStream in, long size) throws IOException, InterruptedException {
+        byte[] buffer = new byte[COPY_BUFFER];
+        long total = 0;
+        long sinceLastBlock = 0;
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            total += read;
+            sinceLastBlock += read;
+            if (sinceLastBlock >= CONSUMER_BLOCK) {
+                sinceLastBlock -= CONSUMER_BLOCK;
+                Thread.sleep(CONSUMER_LATENCY_MS);
+            }
+        }
+        if (total != size) {
+            throw new IllegalStateException("Read " + total + " bytes");
+        }
+    }
+
+    private static void report(FileShape file, long sourceLatency, String stream, long[] millis, long[] plain) {
+        long median = millis[millis.length / 2];
+        long plainMedian = plain[plain.length / 2];
+        double megabytes = (double) file.size() / (1024 * 1024);
+        System.out.printf("%-20s %-9s %-18s %5d ms %5d ms %5d ms %9.1f %7.2fx%n",
+                file.name(), sourceLatency + " ms", stream, median, millis[0], millis[millis.length - 1],
+                megabytes / (Math.max(median, 1) / 1000.0), (double) plainMedian / Math.max(median, 1));
+    }
+
+    private interface StreamFactory {
+        InputStream open() throws IOException;
+    }
+
+    private record FileShape(String name, long size, int chunkSize) {
+    }
+
+    // Serves a file of zeros, sleeping before each new chunk like a GridFS cursor fetch
+    private static class LatencyInputStream extends InputStream {
+
+        private final FileShape file;
+        private final long latencyMillis;
+        private long position;
+
+        private LatencyInputStream(FileShape file, long latencyMillis) {
+            this.file = file;
+            this.latencyMillis = latencyMillis;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (position >= file.size()) {
+                return -1;
+            }
+            if (length == 0) {
+                return 0;
+            }
+            int chunkSize = file.chunkSize();
+            if (position % chunkSize == 0) {
+                try {
+                    Thread.sleep(latencyMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted", e);
+                }
+            }
+            long chunkEnd = Math.min(file.size(), (position / chunkSize + 1) * chunkSize);
+            int count = (int) Math.min(length, chunkEnd - position);
+            Arrays.fill(buffer, offset, offset + count, (byte) 0);
+            position += count;
+            return count;
+        }
+    }
+}